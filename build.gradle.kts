@@ -1,3 +1,7 @@
+import java.io.ByteArrayOutputStream
+import javax.inject.Inject
+import org.gradle.process.ExecOperations
+
 plugins {
   java
   application
@@ -11,13 +15,98 @@ repositories {
 version = "1.0.0"
 group = "org.rwtodd"
 
+// The tests only touch the engine side (no JavaFX toolkit), so they run
+// headless like the benchmarks do.
 dependencies {
+    testImplementation(platform("org.junit:junit-bom:5.11.3"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+    jvmArgs("-Djava.awt.headless=true")
+}
+
+// ./gradlew simulate -Psim.args="--games 100000 --size 16x16 --density 0.15"
+// plays games headlessly; JavaFX is never started.
+tasks.register<JavaExec>("simulate") {
+    group = "application"
+    description = "Plays games without the UI and reports win rates and timings."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "rwt.minesweeper.Simulate"
+    jvmArgs("-Djava.awt.headless=true")
+    providers.gradleProperty("sim.args").orNull?.let { args(it.split(" ")) }
+}
+
+// The engine benchmarks (src/jmh) only need the main classes on the
+// classpath, not JavaFX, so they run headless.
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaselineFile = layout.projectDirectory.file("src/jmh/baseline/results.json")
+
+// ./gradlew jmh -Pjmh.args="floodReveal -p size=1000" to narrow things down
+// fails when a benchmark's score is much worse than the committed baseline
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the engine benchmarks."
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    jvmArgs("-Djava.awt.headless=true")
+    args("-rf", "json", "-rff", jmhResults.get().asFile.path)
+    providers.gradleProperty("jmh.args").orNull?.let { args(it.split(" ")) }
+    val tolerance = (findProperty("jmh.tolerance") as String?)?.toDouble() ?: 1.25
+    doFirst { jmhResults.get().asFile.parentFile.mkdirs() }
+    doLast {
+        val base = jmhBaselineFile.asFile
+        if (!base.exists()) {
+            logger.lifecycle("no jmh baseline yet... run ./gradlew jmhBaseline to record one")
+            return@doLast
+        }
+        // every benchmark is average microseconds, so a bigger score is worse
+        @Suppress("UNCHECKED_CAST")
+        fun scores(f: File) = (groovy.json.JsonSlurper().parse(f) as List<Map<String, Any>>).associate {
+            val params = (it["params"] as Map<String, Any>?)?.toSortedMap()?.entries?.joinToString(",") ?: ""
+            "${it["benchmark"]}($params)" to ((it["primaryMetric"] as Map<String, Any>)["score"] as Number).toDouble()
+        }
+        // worse by the tolerance, and by more than a microsecond, so timer
+        // noise on the tiny ones doesn't count
+        val was = scores(base)
+        val worse = scores(jmhResults.get().asFile).mapNotNull { (name, us) ->
+            val before = was[name] ?: return@mapNotNull null
+            if (us > before * tolerance && us - before > 1.0) "$name %.3f us, was %.3f us".format(us, before) else null
+        }
+        if (worse.isNotEmpty()) throw GradleException("benchmarks regressed:\n  " + worse.joinToString("\n  "))
+        logger.lifecycle("benchmark scores are within ${tolerance}x of the baseline")
+    }
+}
+
+// copies the last run over the committed baseline, so a diff shows regressions
+tasks.register<Copy>("jmhBaseline") {
+    group = "benchmark"
+    description = "Records the last jmh run as the committed baseline."
+    from(jmhResults)
+    into("src/jmh/baseline")
 }
 
 tasks.withType<JavaCompile>().configureEach {
     options.release = 21
 }
 
+// the game itself builds warning-free, and stays that way
+tasks.named<JavaCompile>("compileJava") {
+    options.compilerArgs.addAll(listOf("-Xlint:all", "-Werror"))
+}
+
 javafx {
     version = "23"
     modules = listOf("javafx.controls", "javafx.fxml")
@@ -28,3 +117,215 @@ application {
     mainClass = "rwt.minesweeper.MainApp"
 }
 
+// AppCDS: run the game once (it quits as soon as its window is up) and
+// have the JVM archive every class it loaded, so later starts can map them
+// in instead of loading and verifying them again.
+val cdsArchive = layout.buildDirectory.file("appcds/minesweeper.jsa")
+
+tasks.register<JavaExec>("appCds") {
+    group = "application"
+    description = "Records an AppCDS archive of the classes the game loads at startup."
+    classpath = files(tasks.jar) + sourceSets.main.get().runtimeClasspath
+    mainModule = "rwt.minesweeper"
+    mainClass = "rwt.minesweeper.MainApp"
+    jvmArgs("-XX:ArchiveClassesAtExit=" + cdsArchive.get().asFile.path,
+            "-Dminesweeper.exitAfterStartup=true")
+    doFirst { cdsArchive.get().asFile.parentFile.mkdirs() }
+}
+
+// ./gradlew run picks up the archive once appCds has made it
+tasks.named<JavaExec>("run") {
+    doFirst {
+        val archive = cdsArchive.get().asFile
+        if (archive.exists()) jvmArgs("-XX:SharedArchiveFile=" + archive.path)
+    }
+}
+
+// Starts the game a few times with and without the archive, and reports the
+// median time from JVM launch to the first frame.  It needs a display, unless
+// -Pstartup.headless=true runs it on Monocle like the frame benchmark.
+abstract class StartupBenchmark @Inject constructor(private val execOps: ExecOperations) : DefaultTask() {
+    @get:Classpath abstract val appClasspath: ConfigurableFileCollection
+    @get:Internal abstract val archive: RegularFileProperty
+    @get:Input abstract val runs: Property<Int>
+    @get:Input abstract val fxArgs: ListProperty<String>
+
+    @TaskAction
+    fun measure() {
+        val pattern = Regex("first frame after (\\d+) ms")
+        fun medianStartup(vararg extraArgs: String): Long {
+            val times = (1..runs.get()).map {
+                val out = ByteArrayOutputStream()
+                execOps.javaexec {
+                    classpath = appClasspath
+                    mainModule.set("rwt.minesweeper")
+                    mainClass.set("rwt.minesweeper.MainApp")
+                    jvmArgs(fxArgs.get())
+                    jvmArgs("-Dminesweeper.exitAfterStartup=true", *extraArgs)
+                    standardOutput = out
+                }
+                pattern.find(out.toString())?.groupValues?.get(1)?.toLong()
+                    ?: throw GradleException("no startup time in the game's output:\n$out")
+            }.sorted()
+            return times[times.size / 2]
+        }
+
+        logger.lifecycle("without AppCDS: first frame after ${medianStartup()} ms (median of ${runs.get()})")
+        if (fxArgs.get().any { it.startsWith("--patch-module") }) {
+            // the JVM turns CDS off for any patched module, Monocle's included
+            logger.lifecycle("AppCDS can't be timed headless, with Monocle patched into javafx.graphics")
+            return
+        }
+        val jsa = archive.get().asFile
+        if (jsa.exists()) {
+            logger.lifecycle("with AppCDS:    first frame after ${medianStartup("-XX:SharedArchiveFile=" + jsa.path)} ms")
+        } else {
+            logger.lifecycle("no AppCDS archive yet... run ./gradlew appCds first")
+        }
+    }
+}
+
+// Monocle's headless glass and the software pipeline let the game run
+// without a display.  There's no Monocle release for JavaFX 23, so it's
+// built here from javafx-graphics' own sources; it isn't a module of its
+// own, so it gets compiled as, and later patched into, javafx.graphics.
+val monocleSources by configurations.creating {
+    isTransitive = false
+    attributes {
+        attribute(Category.CATEGORY_ATTRIBUTE, objects.named(Category.DOCUMENTATION))
+        attribute(DocsType.DOCS_TYPE_ATTRIBUTE, objects.named(DocsType.SOURCES))
+    }
+}
+
+dependencies {
+    monocleSources("org.openjfx:javafx-graphics:${javafx.version}")
+}
+
+val monocleSrc = layout.buildDirectory.dir("monocle/src")
+
+val extractMonocle = tasks.register<Sync>("extractMonocle") {
+    from({ zipTree(monocleSources.singleFile) }) { include("com/sun/glass/ui/monocle/**") }
+    into(monocleSrc)
+}
+
+val compileMonocle = tasks.register<JavaCompile>("compileMonocle") {
+    dependsOn(extractMonocle)
+    source(monocleSrc)
+    classpath = files()
+    destinationDirectory = layout.buildDirectory.dir("monocle/classes")
+    val fx = sourceSets.main.get().runtimeClasspath.filter { it.name.startsWith("javafx-") }
+    // it's JavaFX's code, not ours, so its warnings aren't ours either
+    options.compilerArgs.addAll(listOf("-nowarn", "-Xlint:none"))
+    options.compilerArgumentProviders.add(CommandLineArgumentProvider {
+        listOf("--module-path", fx.asPath,
+                "--patch-module", "javafx.graphics=" + monocleSrc.get().asFile.path,
+                "--add-modules", "javafx.graphics")
+    })
+}
+
+// MonocleCursor reads a 16x16 image for each cursor, which aren't in the
+// sources; on a headless screen nobody sees them, so they're blank.
+val monocleCursors = tasks.register("monocleCursors") {
+    val dir = layout.buildDirectory.dir("monocle/cursors")
+    outputs.dir(dir)
+    doLast {
+        val pkg = dir.get().dir("com/sun/glass/ui/monocle").asFile
+        pkg.mkdirs()
+        listOf("Default", "ClosedHand", "Crosshair", "Disappear", "Move", "OpenHand", "PointingHand",
+                "ResizeDown", "ResizeLeft", "ResizeLeftRight", "ResizeNorthEast", "ResizeNorthWest",
+                "ResizeRight", "ResizeSouthEast", "ResizeSouthWest", "ResizeUp", "ResizeUpDown",
+                "Text", "Wait").forEach {
+            pkg.resolve("Cursor${it}Translucent.raw").writeBytes(ByteArray(1024))
+        }
+    }
+}
+
+val monocleJar = tasks.register<Jar>("monocleJar") {
+    archiveFileName = "monocle-${javafx.version}.jar"
+    destinationDirectory = layout.buildDirectory.dir("monocle")
+    from(compileMonocle)
+    from(monocleCursors)
+}
+
+fun headlessFxArgs() = listOf("--patch-module=javafx.graphics=" + monocleJar.get().archiveFile.get().asFile.path,
+        "-Dglass.platform=Monocle", "-Dmonocle.platform=Headless",
+        "-Dprism.order=sw", "-Dheadless.geometry=1920x1200-32")
+
+tasks.register<StartupBenchmark>("startupBenchmark") {
+    group = "benchmark"
+    description = "Times startup to the first frame, with and without the AppCDS archive."
+    dependsOn(tasks.jar)
+    appClasspath.from(files(tasks.jar) + sourceSets.main.get().runtimeClasspath)
+    archive = cdsArchive
+    runs = (findProperty("startup.runs") as String?)?.toInt() ?: 5
+    val headless = (findProperty("startup.headless") as String?).toBoolean()
+    if (headless) dependsOn(monocleJar)
+    fxArgs = provider { if (headless) headlessFxArgs() else emptyList() }
+}
+
+// Frame times: FrameBench (src/frames) plays scripted scenes through the
+// real window and times every pulse, headless.  It reaches into the
+// game's package, so it's compiled against the main classes and patched
+// into the game's module to run, and the game itself carries none of it.
+val frames by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+val frameResults = layout.buildDirectory.file("results/frames/frames.json")
+val frameBaseline = layout.projectDirectory.file("src/frames/baseline/frames.json")
+
+// ./gradlew frameBenchmark -Pframes.args="--render canvas --repeat 10"
+// fails when a scenario's p99 is much worse than the committed baseline
+tasks.register<JavaExec>("frameBenchmark") {
+    group = "benchmark"
+    description = "Times every frame of scripted games in a headless window."
+    dependsOn(tasks.jar, frames.output, monocleJar)
+    classpath = files(tasks.jar) + sourceSets.main.get().runtimeClasspath
+    mainModule = "rwt.minesweeper"
+    mainClass = "rwt.minesweeper.FrameBench"
+    args("--out", frameResults.get().asFile.path)
+    providers.gradleProperty("frames.args").orNull?.let { args(it.split(" ")) }
+    val tolerance = (findProperty("frames.tolerance") as String?)?.toDouble() ?: 1.5
+    doFirst {
+        jvmArgs("--patch-module=rwt.minesweeper=" + frames.output.classesDirs.asPath)
+        jvmArgs(headlessFxArgs())
+    }
+    doLast {
+        val base = frameBaseline.asFile
+        if (!base.exists()) {
+            logger.lifecycle("no frame baseline yet... run ./gradlew frameBaseline to record one")
+            return@doLast
+        }
+        @Suppress("UNCHECKED_CAST")
+        fun load(f: File) = groovy.json.JsonSlurper().parse(f) as Map<String, Any>
+        @Suppress("UNCHECKED_CAST")
+        fun p99s(report: Map<String, Any>, key: String) =
+            (report["scenarios"] as List<Map<String, Any>>).associate {
+                it["name"] as String to ((it[key] as Map<String, Any>)["p99"] as Number).toDouble()
+            }
+        val now = load(frameResults.get().asFile)
+        val was = load(base)
+        if (listOf("board", "renderer").any { now[it] != was[it] }) {
+            logger.lifecycle("the baseline is for a different board or renderer... not comparing")
+            return@doLast
+        }
+        // worse by the tolerance, and by more than a millisecond, so the
+        // jitter on tiny frames doesn't count
+        val worse = listOf("busyMs", "intervalMs").flatMap { key ->
+            val before = p99s(was, key)
+            p99s(now, key).mapNotNull { (name, ms) ->
+                val b = before[name] ?: return@mapNotNull null
+                if (ms > b * tolerance && ms - b > 1.0) "$name $key p99 %.3f ms, was %.3f ms".format(ms, b) else null
+            }
+        }
+        if (worse.isNotEmpty()) throw GradleException("frame times regressed:\n  " + worse.joinToString("\n  "))
+        logger.lifecycle("frame times are within ${tolerance}x of the baseline")
+    }
+}
+
+tasks.register<Copy>("frameBaseline") {
+    group = "benchmark"
+    description = "Records the last frameBenchmark run as the committed baseline."
+    from(frameResults)
+    into(frameBaseline.asFile.parentFile)
+}
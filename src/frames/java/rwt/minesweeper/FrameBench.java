@@ -0,0 +1,406 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+/**
+ * Plays scripted scenes through the real game window and times every
+ * pulse, to catch the slow frames that the engine benchmarks can't see:
+ * starting a new game, dragging the window bigger and smaller, a reveal
+ * that cascades over most of the board, an explosion, and a game played
+ * through to the win.
+ *
+ * It lives apart from the game (in src/frames) and gets patched into the
+ * game's module to run.  It runs anywhere JavaFX does, but it's meant for
+ * Monocle's headless glass with the software pipeline, so it needs no
+ * display at all (see the frameBenchmark task in the build):
+ *
+ * <pre>
+ *   java --patch-module rwt.minesweeper=build/classes/java/frames \
+ *        -Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw ... \
+ *        -m rwt.minesweeper/rwt.minesweeper.FrameBench --size 50x50 --render auto --repeat 5 --out frames.json
+ * </pre>
+ *
+ * Each pulse gets two times.  "busy" is from the start of the pulse's
+ * animations to the end of its layout, like the PerfHud's pulse time.
+ * "interval" is from the start of the last pulse, so it also catches work
+ * that runs between pulses (the coalesced resize, the engine's changes
+ * arriving) and a renderer that can't keep up.  The scene's node count
+ * goes with each pulse too.  The report is JSON, with p50/p99/max for each
+ * scenario and every pulse's numbers after that.
+ *
+ * @author richa
+ */
+public final class FrameBench extends Application {
+
+    private static int width = 50, height = 50;
+    private static double density = 0.1;
+    private static RenderMode renderMode = RenderMode.AUTO;
+    private static int repeat = 5;
+    private static Path out = Path.of("frames.json");
+    private static volatile boolean failed;
+
+    // frames to let a new board settle before timing starts, and to let an
+    // animation play out after the move that started it
+    private static final int SETTLE_FRAMES = 30;
+    private static final int ANIMATION_FRAMES = 120;
+
+    public static void main(String[] args) {
+        try {
+            parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        }
+        launch(args);
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static void usage() {
+        System.err.println("usage: FrameBench [--size WxH] [--density D] [--render auto|tiles|mesh|canvas]");
+        System.err.println("                  [--repeat N] [--out FILE]");
+    }
+
+    private static void parse(String[] args) {
+        for (int i = 0; i < args.length; ++i) {
+            final String opt = args[i];
+            if (i + 1 == args.length) throw new IllegalArgumentException("missing value for " + opt);
+            final String val = args[++i];
+            try {
+                switch (opt) {
+                    case "--size" -> {
+                        final String[] wh = val.split("x");
+                        if (wh.length != 2) throw new IllegalArgumentException("bad size " + val);
+                        width = Integer.parseInt(wh[0]);
+                        height = Integer.parseInt(wh[1]);
+                    }
+                    case "--density" -> density = Double.parseDouble(val);
+                    case "--render" -> renderMode = RenderMode.valueOf(val.toUpperCase(Locale.ROOT));
+                    case "--repeat" -> repeat = Integer.parseInt(val);
+                    case "--out" -> out = Path.of(val);
+                    default -> throw new IllegalArgumentException("unknown option " + opt);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad number for " + opt + ": " + val);
+            } catch (IllegalArgumentException e) {
+                if (opt.equals("--render")) throw new IllegalArgumentException("unknown renderer " + val);
+                throw e;
+            }
+        }
+        if (width < 2 || height < 2 || repeat <= 0) throw new IllegalArgumentException("size and repeat are too small");
+        if (density <= 0 || density >= 1) throw new IllegalArgumentException("density must be between 0 and 1");
+    }
+
+    private Stage stage;
+    private GameHooks game;
+
+    // the script: actions run at the start of a pulse, until one of them
+    // asks for some frames to go by
+    private final ArrayDeque<Runnable> script = new ArrayDeque<>();
+    private int waitFrames;
+
+    private final List<Scenario> results = new ArrayList<>();
+    private Scenario recording;   // null while setting up
+    private long pulseStart, lastPulse;
+
+    private final AnimationTimer driver = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse();
+        }
+    };
+
+    @Override
+    public void start(Stage stage) throws Exception {
+        this.stage = stage;
+        game = new GameHooks(MainApp.loadScene(stage));
+        stage.show();
+        stage.getScene().addPostLayoutPulseListener(this::pulseEnd);
+        writeScript();
+        // (started after the scene, but before anything the game starts,
+        // so it runs first in every pulse)
+        driver.start();
+    }
+
+    private void writeScript() {
+        // a new game: the board built and laid out, and its first frames
+        scenario("newGame", null, () -> {
+            act(this::newGame);
+            pause(SETTLE_FRAMES);
+        });
+
+        // a window drag, a step a frame: bigger, then back again
+        scenario("resize", this::newGame, () -> {
+            for (int i = 0; i < 60; ++i) {
+                final double d = (i < 30) ? 20 : -20;
+                act(() -> {
+                    stage.setWidth(stage.getWidth() + d);
+                    stage.setHeight(stage.getHeight() + d * 0.75);
+                });
+                pause(1);
+            }
+            pause(SETTLE_FRAMES);
+        });
+
+        // the biggest cascade there is: a board with hardly any mines, opened
+        // at its largest empty region
+        scenario("cascade", () -> game.newGame(width, height, 0.01, renderMode), () -> {
+            act(() -> click(largestOpening(game.field())));
+            pause(ANIMATION_FRAMES);
+        });
+
+        scenario("explosion", this::newGame, () -> {
+            act(() -> click(firstMine(game.field())));
+            pause(ANIMATION_FRAMES);
+        });
+
+        // every safe cell opened, a click a frame, and then the victory dance
+        scenario("win", this::newGame, () -> {
+            act(this::playToWin);
+            pause(ANIMATION_FRAMES);
+        });
+    }
+
+    private void newGame() {
+        game.newGame(width, height, density, renderMode);
+    }
+
+    // A scenario runs 'repeat' times, into one set of results.  Each run
+    // gets a fresh board from setUp (if there is one), and some frames for
+    // that to settle, before the recording starts.
+    private void scenario(String name, Runnable setUp, Runnable steps) {
+        final Scenario sc = new Scenario(name);
+        results.add(sc);
+        for (int i = 0; i < repeat; ++i) {
+            if (setUp != null) {
+                act(setUp);
+                pause(SETTLE_FRAMES);
+            }
+            act(() -> recording = sc);
+            steps.run();
+            act(() -> recording = null);
+        }
+    }
+
+    private void act(Runnable r) { script.add(r); }
+
+    private void pause(int frames) {
+        script.add(() -> waitFrames = frames);
+    }
+
+    private void click(int cell) {
+        final MineField mf = game.field();
+        if (cell >= 0) game.click(mf.xOf(cell), mf.yOf(cell), false);
+    }
+
+    // One safe cell a frame, the empty ones first since they open the most.
+    // The field shown trails the engine a little, so a cell can get clicked
+    // twice... the second click does nothing.
+    private void playToWin() {
+        final MineField mf = game.field();
+        if (mf.isOver()) return;
+        int pick = -1;
+        for (int c = 0; c < mf.cellCount(); ++c) {
+            if (mf.hasBomb(c) || mf.isRevealed(c)) continue;
+            if (mf.countNeighbors(c) == 0) {
+                pick = c;
+                break;
+            }
+            if (pick < 0) pick = c;
+        }
+        click(pick);  // (nothing to pick means the last reveal is still on its way)
+        script.addFirst(this::playToWin);
+        script.addFirst(() -> waitFrames = 1);
+    }
+
+    // the cell whose reveal opens up the most of the board
+    private static int largestOpening(MineField mf) {
+        final MineField scratch = mf.copy();
+        int best = -1, bestSize = 0;
+        for (int c = 0; c < scratch.cellCount(); ++c) {
+            if (scratch.hasBomb(c) || scratch.isRevealed(c) || scratch.countNeighbors(c) != 0) continue;
+            final int size = scratch.revealFrom(scratch.xOf(c), scratch.yOf(c));
+            if (size > bestSize) {
+                best = c;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    private static int firstMine(MineField mf) {
+        for (int c = 0; c < mf.cellCount(); ++c) {
+            if (mf.hasBomb(c)) return c;
+        }
+        return -1;
+    }
+
+    // ------------------------------------------------------------------
+    // timing
+
+    private void pulse() {
+        final long now = System.nanoTime();
+        final long interval = (lastPulse == 0) ? 0 : now - lastPulse;
+        lastPulse = pulseStart = now;
+        // (taken before this pulse's actions, since it's the last pulse's
+        // work that it covers)
+        if (recording != null) recording.interval(interval);
+
+        try {
+            while (waitFrames == 0 && !script.isEmpty()) script.poll().run();
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+            failed = true;
+            script.clear();
+        }
+        if (waitFrames > 0) {
+            --waitFrames;
+        } else if (script.isEmpty()) {
+            driver.stop();
+            Platform.runLater(this::finish);
+        }
+    }
+
+    // the pulse's changes are laid out by now, and about to be rendered
+    private void pulseEnd() {
+        if (pulseStart == 0) return;
+        final long busy = System.nanoTime() - pulseStart;
+        pulseStart = 0;
+        if (recording != null) recording.frame(busy, PerfHud.countNodes(stage.getScene().getRoot()));
+    }
+
+    private void finish() {
+        if (!failed) {
+            System.out.printf("%s board, density %.3f, %s renderer, %d runs each%n",
+                    width + "x" + height, density, renderMode, repeat);
+            System.out.printf("%-10s %7s %10s %10s %10s %10s %10s %8s%n",
+                    "scenario", "frames", "busy p50", "busy p99", "busy max", "ivl p50", "ivl p99", "nodes");
+            for (Scenario sc : results) sc.print();
+            try {
+                if (out.getParent() != null) Files.createDirectories(out.getParent());
+                Files.writeString(out, report());
+                System.out.println("report written to " + out);
+            } catch (IOException ex) {
+                System.err.println("couldn't write the report: " + ex);
+                failed = true;
+            }
+        }
+        Platform.exit();
+    }
+
+    private String report() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"board\": \"").append(width).append('x').append(height).append("\",\n");
+        sb.append("  \"density\": ").append(density).append(",\n");
+        sb.append("  \"renderer\": \"").append(renderMode.name()).append("\",\n");
+        sb.append("  \"repeat\": ").append(repeat).append(",\n");
+        sb.append("  \"scenarios\": [\n");
+        for (int i = 0; i < results.size(); ++i) {
+            results.get(i).json(sb);
+            sb.append((i + 1 < results.size()) ? ",\n" : "\n");
+        }
+        sb.append("  ]\n}\n");
+        return sb.toString();
+    }
+
+    // what the pulses of one scenario came to
+    private static final class Scenario {
+        final String name;
+        private long[] busy = new long[256];
+        private long[] intervals = new long[256];
+        private int[] nodes = new int[256];
+        private int frames, intervalCount;
+
+        Scenario(String name) { this.name = name; }
+
+        void interval(long nanos) {
+            if (intervalCount == intervals.length) intervals = Arrays.copyOf(intervals, intervalCount * 2);
+            intervals[intervalCount++] = nanos;
+        }
+
+        void frame(long busyNanos, int nodeCount) {
+            if (frames == busy.length) {
+                busy = Arrays.copyOf(busy, frames * 2);
+                nodes = Arrays.copyOf(nodes, frames * 2);
+            }
+            busy[frames] = busyNanos;
+            nodes[frames] = nodeCount;
+            ++frames;
+        }
+
+        void print() {
+            final long[] b = sorted(busy, frames);
+            final long[] iv = sorted(intervals, intervalCount);
+            System.out.printf("%-10s %7d %10.3f %10.3f %10.3f %10.3f %10.3f %,8d%n",
+                    name, frames, percentile(b, 0.50), percentile(b, 0.99), percentile(b, 1.0),
+                    percentile(iv, 0.50), percentile(iv, 0.99), maxNodes());
+        }
+
+        void json(StringBuilder sb) {
+            final long[] b = sorted(busy, frames);
+            final long[] iv = sorted(intervals, intervalCount);
+            sb.append("    {\n");
+            sb.append("      \"name\": \"").append(name).append("\",\n");
+            sb.append("      \"frames\": ").append(frames).append(",\n");
+            sb.append("      \"busyMs\": ").append(summary(b)).append(",\n");
+            sb.append("      \"intervalMs\": ").append(summary(iv)).append(",\n");
+            sb.append("      \"maxNodes\": ").append(maxNodes()).append(",\n");
+            sb.append("      \"pulses\": {\n");
+            sb.append("        \"busyMs\": ").append(millis(busy, frames)).append(",\n");
+            sb.append("        \"intervalMs\": ").append(millis(intervals, intervalCount)).append(",\n");
+            sb.append("        \"nodes\": ").append(Arrays.toString(Arrays.copyOf(nodes, frames))).append('\n');
+            sb.append("      }\n");
+            sb.append("    }");
+        }
+
+        private int maxNodes() {
+            int max = 0;
+            for (int i = 0; i < frames; ++i) max = Math.max(max, nodes[i]);
+            return max;
+        }
+
+        private static long[] sorted(long[] a, int n) {
+            final long[] s = Arrays.copyOf(a, n);
+            Arrays.sort(s);
+            return s;
+        }
+
+        private static String summary(long[] sorted) {
+            return String.format(Locale.ROOT, "{ \"p50\": %.3f, \"p99\": %.3f, \"max\": %.3f }",
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        }
+
+        private static String millis(long[] a, int n) {
+            final StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < n; ++i) {
+                if (i > 0) sb.append(", ");
+                sb.append(String.format(Locale.ROOT, "%.3f", a[i] / 1e6));
+            }
+            return sb.append(']').toString();
+        }
+    }
+
+    // nearest-rank percentile, in milliseconds
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        final int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
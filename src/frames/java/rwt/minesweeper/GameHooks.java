@@ -0,0 +1,83 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+
+/**
+ * How FrameBench plays the game: through the controller's own options and
+ * click handler, the same code paths as the Options dialog and the mouse.
+ * None of that is open outside the controller, but FrameBench is patched
+ * into the game's module, so it can reach them the way FXMLLoader does.
+ * The handles are found up front, so a renamed field fails the benchmark
+ * at startup rather than partway through a run.
+ *
+ * @author richa
+ */
+final class GameHooks {
+
+    private static final VarHandle COLS, ROWS, PCT, RENDER, NO_GUESS, SAFE_FIRST, FIELD;
+    private static final MethodHandle SETUP_BOARD, CELL_CLICK;
+
+    static {
+        try {
+            final MethodHandles.Lookup l =
+                    MethodHandles.privateLookupIn(FXMLController.class, MethodHandles.lookup());
+            COLS = l.findVarHandle(FXMLController.class, "colTiles", int.class);
+            ROWS = l.findVarHandle(FXMLController.class, "rowTiles", int.class);
+            PCT = l.findVarHandle(FXMLController.class, "pctBombs", double.class);
+            RENDER = l.findVarHandle(FXMLController.class, "renderMode", RenderMode.class);
+            NO_GUESS = l.findVarHandle(FXMLController.class, "noGuess", boolean.class);
+            SAFE_FIRST = l.findVarHandle(FXMLController.class, "safeFirstClick", boolean.class);
+            FIELD = l.findVarHandle(FXMLController.class, "mineField", MineField.class);
+            SETUP_BOARD = l.findVirtual(FXMLController.class, "setupBoard", MethodType.methodType(void.class));
+            CELL_CLICK = l.findVirtual(FXMLController.class, "handleCellClick",
+                    MethodType.methodType(void.class, int.class, int.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final FXMLController controller;
+
+    GameHooks(FXMLController controller) {
+        this.controller = controller;
+    }
+
+    /** Starts a new game with these options, as the Options dialog would. */
+    void newGame(int cols, int rows, double pct, RenderMode mode) {
+        COLS.set(controller, cols);
+        ROWS.set(controller, rows);
+        PCT.set(controller, pct);
+        RENDER.set(controller, mode);
+        NO_GUESS.set(controller, false);
+        SAFE_FIRST.set(controller, false);  // so the mines are known before the first click
+        try {
+            SETUP_BOARD.invoke(controller);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    void click(int x, int y, boolean secondary) {
+        try {
+            CELL_CLICK.invoke(controller, x, y, secondary);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /** @return the field the board shows (which trails the engine by a pulse or so). */
+    MineField field() {
+        return (MineField) FIELD.get(controller);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the game engine.  None of this touches JavaFX, so it runs
+ * fine headless:  {@code ./gradlew jmh}.
+ *
+ * Boards are built from fixed seeds, so every run measures the same boards.
+ *
+ * @author richa
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MineFieldBenchmark {
+
+    @Param({"100", "1000", "3000"})
+    public int size;
+
+    @Param({"0.1", "0.2", "0.45"})
+    public double density;
+
+    private static final long SEED = 0x5eed_1234L;
+
+    // a board that is only read from, for the neighbor counts
+    private MineField built;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        built = new MineField(size, size, density, SEED, false);
+    }
+
+    /**
+     * A fresh board for every call, since a cell can only be revealed once.
+     * The mines are placed once per trial; each call gets a copy of them
+     * with nothing revealed, which costs a few array copies instead of a
+     * whole new board.  (Neither is part of the measurement.)
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+        MineField field;
+        int[] safeCells;   // for playing it out to a win
+        private MineField pristine;
+
+        @Setup(Level.Trial)
+        public void build(MineFieldBenchmark b) {
+            pristine = new MineField(b.size, b.size, b.density, b.size / 2, b.size / 2, SEED);
+            safeCells = new int[pristine.cellCount() - pristine.howManyMines()];
+            int n = 0;
+            for (int i = 0; i < pristine.cellCount(); ++i) {
+                if (!pristine.hasBomb(i)) safeCells[n++] = i;
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void copy() {
+            field = pristine.freshCopy();
+        }
+    }
+
+    /** Mine placement and neighbor counts, from scratch. */
+    @Benchmark
+    public MineField construct() {
+        return new MineField(size, size, density, SEED, false);
+    }
+
+    /** The first click, which flood-fills out from a safe 3x3 block. */
+    @Benchmark
+    public int floodReveal(Fresh f) {
+        return f.field.revealFrom(size / 2, size / 2);
+    }
+
+    /** Opens every safe cell, one click at a time, until the win is detected. */
+    @Benchmark
+    public MineField.State playToWin(Fresh f) {
+        final MineField mf = f.field;
+        for (int c : f.safeCells) mf.open(mf.xOf(c), mf.yOf(c));
+        return mf.getState();
+    }
+
+    /** Reads every neighbor count on the board. */
+    @Benchmark
+    public void neighborCounts(Blackhole bh) {
+        final int cells = built.cellCount();
+        int sum = 0;
+        for (int i = 0; i < cells; ++i) sum += built.countNeighbors(i);
+        bh.consume(sum);
+    }
+}
@@ -2,6 +2,7 @@ module rwt.minesweeper {
    requires javafx.fxml;
    requires javafx.controls;
    requires transitive javafx.graphics;
+   requires jdk.jfr;
    exports rwt.minesweeper to javafx.graphics;
    opens rwt.minesweeper to javafx.fxml;
 }
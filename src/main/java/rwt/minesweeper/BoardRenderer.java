@@ -0,0 +1,58 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * A way of drawing a MineField into the board Pane.  The controller owns
+ * the game; a renderer just shows it and reports clicks back.
+ *
+ * @author richa
+ */
+public interface BoardRenderer {
+
+    /** Something that wants to hear about clicks on cells. */
+    interface CellClickHandler {
+        void cellClicked(int x, int y, boolean secondary);
+    }
+
+    /** Start showing a new MineField. */
+    void setField(MineField mf);
+
+    /** Stop showing anything, so another renderer can take over the board. */
+    void clear();
+
+    /** Recompute the layout after the window or viewport changed size. */
+    void resize();
+
+    /**
+     * Scale the cells by zoom, where 1 is the usual fit-to-the-window size,
+     * and re-layout.  Each renderer has its own limits on how small cells
+     * can get.
+     *
+     * @return the zoom actually used.
+     */
+    double setZoom(double zoom);
+
+    /** Redraw a single cell from its current MineField state. */
+    void refreshCell(int x, int y);
+
+    /** Redraw everything on show, after the MineField jumped (an undo or redo). */
+    void refreshAll();
+
+    /** Show the cells revealed by a click, rippling out from the origin. */
+    void animateReveal(RevealResult revealed);
+
+    /** Show the Solver's mine probabilities as a heat map, or stop if null. */
+    void showHints(Hints hints);
+
+    /** The victory dance. */
+    void animateWin();
+
+    /** The player hit the mine at (x,y)... blow up the board. */
+    void animateExplosion(int x, int y);
+
+    /** @return how many animations are running right now, for the performance HUD. */
+    int activeAnimations();
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * What a player can see of a MineField at one moment: which cells are
+ * revealed, and the neighbor counts on those cells.  It's a copy, so it can
+ * be handed to another thread (the Solver, say) while the game goes on.
+ * (The counts are shared with the field, since they never change once the
+ * mines are placed, but only those of revealed cells show.)
+ *
+ * @author richa
+ */
+public final class BoardSnapshot {
+    private final int width;
+    private final int height;
+    private final int numberOfMines;
+    private final long[] revealed;
+    private final byte[] counts;   // packed as MineField keeps them
+
+    BoardSnapshot(int width, int height, int numberOfMines, long[] revealed, byte[] counts) {
+        this.width = width;
+        this.height = height;
+        this.numberOfMines = numberOfMines;
+        this.revealed = revealed;
+        this.counts = counts;
+    }
+
+    public int width() { return width; }
+    public int height() { return height; }
+    public int cellCount() { return width * height; }
+    public int howManyMines() { return numberOfMines; }
+
+    public boolean isRevealed(int idx) { return MineField.getBit(revealed, idx); }
+
+    /** @return the neighbor count of a revealed cell, or -1 if it isn't revealed. */
+    public int countNeighbors(int idx) {
+        if (!isRevealed(idx)) return -1;
+        return MineField.countAt(counts, idx);
+    }
+}
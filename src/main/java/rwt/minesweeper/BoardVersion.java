@@ -0,0 +1,75 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * The state of a game after some number of moves, for undo and redo: what
+ * was revealed and flagged, and the tallies that go with it.  The mines
+ * never change once placed, so they aren't kept.
+ *
+ * A version is made from the one before it and the leaves of the board
+ * that the move touched, sharing the rest (see PersistentBits).  Versions
+ * never change, so the engine thread and the FX thread can both hold them.
+ *
+ * @author richa
+ */
+final class BoardVersion {
+    private final int index;       // how many moves since the start of the history
+    private final int moveCount;   // how long the MoveLog was, at this point
+    private final PersistentBits revealed, flagged;
+    private final MineField.State state;
+    private final int safeRemaining, flagsPlaced, minesFlagged;
+    private final boolean minesPlaced;
+
+    private BoardVersion(int index, int moveCount, PersistentBits revealed, PersistentBits flagged, MineField mf) {
+        this.index = index;
+        this.moveCount = moveCount;
+        this.revealed = revealed;
+        this.flagged = flagged;
+        state = mf.getState();
+        safeRemaining = mf.safeCellsRemaining();
+        flagsPlaced = mf.flagsPlaced();
+        minesFlagged = mf.minesFlagged();
+        minesPlaced = mf.minesPlaced();
+    }
+
+    /** @return the start of a history, at the field as it is now. */
+    static BoardVersion first(MineField mf, int moveCount) {
+        return new BoardVersion(0, moveCount,
+                PersistentBits.of(mf.revealedBits()), PersistentBits.of(mf.flaggedBits()), mf);
+    }
+
+    /**
+     * @return the version after a move, which changed only cells in the
+     *         given leaves of mf.  The leaves array gets sorted.
+     */
+    BoardVersion next(MineField mf, int[] leaves, int count, int moveCount) {
+        return new BoardVersion(index + 1, moveCount,
+                revealed.with(mf.revealedBits(), leaves, count),
+                flagged.with(mf.flaggedBits(), leaves, count), mf);
+    }
+
+    /**
+     * @return what the player could see of mf at this version.  Only the
+     *         parts of mf that never change (its size and its mines) are
+     *         read, so this can run on any thread, whatever mf is doing.
+     */
+    BoardSnapshot snapshot(MineField mf) {
+        final long[] bits = new long[mf.revealedBits().length];
+        revealed.writeTo(bits);
+        return new BoardSnapshot(mf.width(), mf.height(), mf.howManyMines(), bits, mf.countBits());
+    }
+
+    int index() { return index; }
+    int moveCount() { return moveCount; }
+
+    PersistentBits revealed() { return revealed; }
+    PersistentBits flagged() { return flagged; }
+    MineField.State state() { return state; }
+    int safeRemaining() { return safeRemaining; }
+    int flagsPlaced() { return flagsPlaced; }
+    int minesFlagged() { return minesFlagged; }
+    boolean minesPlaced() { return minesPlaced; }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Arrays;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * A plain 2D renderer, for machines that struggle with the 3D tiles and for
+ * boards too big to be worth the trouble.  The visible part of the board is
+ * painted onto a single viewport-sized Canvas, and only the cells that
+ * changed get re-painted on each pulse.  Flips are faked by squashing the
+ * cell vertically, and the explosion throws the cells away from the blast.
+ *
+ * This is also the renderer that can zoom out until the whole of a huge
+ * board fits in the window.  Once cells are too small to see, it paints
+ * blocks of them instead, shaded by how much of each block is revealed
+ * and flagged, from a SummaryPyramid.  Either way there's about one fill
+ * per screen-sized cell or block, so a frame costs the same whatever the
+ * size of the board.
+ *
+ * @author richa
+ */
+public final class CanvasBoard implements BoardRenderer {
+
+    // cells can get smaller than the 3D tiles, since there's less detail
+    static final double MIN_CELL_SIZE = 12.0;
+
+    // cells smaller than this are painted as blocks of at least MIN_BLOCK_SIZE
+    private static final double MIN_DETAIL_SIZE = 4.0;
+    private static final double MIN_BLOCK_SIZE = 8.0;
+
+    private static final long FLIP_NANOS = 330_000_000L;
+    private static final long RING_DELAY_NANOS = 40_000_000L;
+    private static final long EXPLOSION_NANOS = 600_000_000L;
+
+    // same colors as the TileBoxes...
+    static final Color OUTER = Color.LIGHTYELLOW;
+    static final Color HOVER = Color.GOLD;
+    static final Color INNER = Color.WHITESMOKE;
+    static final Color FLAG = Color.AQUAMARINE;
+    static final Color BLAST = Color.ORANGERED;
+
+    // the summary block colors, by [revealed eighths][flagged quarters]
+    private static final int REVEAL_STEPS = 8;
+    private static final int FLAG_STEPS = 4;
+    private static final Color[][] SUMMARY = new Color[REVEAL_STEPS + 1][FLAG_STEPS + 1];
+    static {
+        for (int r = 0; r <= REVEAL_STEPS; ++r) {
+            for (int f = 0; f <= FLAG_STEPS; ++f) {
+                SUMMARY[r][f] = INNER.interpolate(OUTER, r / (double) REVEAL_STEPS)
+                        .interpolate(FLAG, f / (double) FLAG_STEPS);
+            }
+        }
+    }
+
+    private final Pane board;
+    private final ScrollPane scroller;
+    private final Canvas canvas = new Canvas();
+    private final GraphicsContext gc;
+
+    private MineField mineField;
+    private Hints hints;
+    private double cellWidth, cellHeight;
+    private double zoom = 1.0;
+    private Font font;
+
+    // when zoomed out, the summaries, and the level to paint from them
+    // (0 means cell by cell).
+    private SummaryPyramid pyramid;
+    private int lodLevel;
+
+    // the part of the board the canvas is covering: its offset, in pixels,
+    // and the range of cells [x0,x1) x [y0,y1) that are at least partly visible.
+    private double left, top;
+    private int x0, y0, x1, y1;
+
+    private int hovered = -1;
+
+    // cells to re-paint on the next pulse (duplicates are harmless)
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+    private boolean fullRedraw;
+
+    // flips in progress... one entry per on-screen cell that is flipping,
+    // plus a bitset so painting can tell a cell is mid-flip.
+    private int[] flipCells = new int[64];
+    private long[] flipStarts = new long[64];
+    private long[] flipEnds = new long[64];
+    private int flipCount;
+    private long[] flipping = new long[0];
+    private long revealStart;   // when the first batch of the latest reveal came in
+
+    // the explosion, if there's been one
+    private long explodeStart = -1;
+    private int blastX, blastY;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse();
+        }
+    };
+
+    public CanvasBoard(Pane board, ScrollPane scroller, CellClickHandler clickHandler) {
+        this.board = board;
+        this.scroller = scroller;
+        gc = canvas.getGraphicsContext2D();
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        canvas.setVisible(false);
+        board.getChildren().add(canvas);
+
+        canvas.setOnMouseClicked(ev -> {
+            final int idx = cellAt(ev.getX(), ev.getY());
+            // cells too small to see are too small to aim at, too
+            if (idx >= 0 && lodLevel == 0 && ev.isStillSincePress()) {
+                clickHandler.cellClicked(mineField.xOf(idx), mineField.yOf(idx),
+                        ev.getButton() == MouseButton.SECONDARY);
+            }
+        });
+        canvas.setOnMouseMoved(ev -> hover(cellAt(ev.getX(), ev.getY())));
+        canvas.setOnMouseExited(ev -> hover(-1));
+
+        scroller.hvalueProperty().addListener((obs, ov, nv) -> reposition());
+        scroller.vvalueProperty().addListener((obs, ov, nv) -> reposition());
+    }
+
+    @Override
+    public void setField(MineField mf) {
+        if (mineField != null) mineField.removeListener(pyramid);
+        mineField = mf;
+        pyramid = new SummaryPyramid(mf);
+        mf.addListener(pyramid);
+        hints = null;
+        hovered = -1;
+        flipCount = 0;
+        dirtyCount = 0;
+        explodeStart = -1;
+        flipping = new long[(int) ((mf.cellCount() + 63L) >>> 6)];
+        canvas.setVisible(true);
+        canvas.toFront();
+        resize();
+    }
+
+    @Override
+    public void clear() {
+        if (mineField != null) mineField.removeListener(pyramid);
+        mineField = null;
+        pyramid = null;
+        flipping = new long[0];
+        canvas.setVisible(false);
+        timer.stop();
+    }
+
+    @Override
+    public void resize() {
+        if (mineField == null) return;
+        final double vw = scroller.getViewportBounds().getWidth();
+        final double vh = scroller.getViewportBounds().getHeight();
+        final double fitW = vw / mineField.width();
+        final double fitH = vh / mineField.height();
+        final double baseW = Math.max(fitW, MIN_CELL_SIZE);
+        final double baseH = Math.max(fitH, MIN_CELL_SIZE);
+        // zooming out stops once the whole board is in view
+        zoom = Math.max(zoom, Math.min(fitW / baseW, fitH / baseH));
+        cellWidth = Math.max(fitW, baseW * zoom);
+        cellHeight = Math.max(fitH, baseH * zoom);
+        board.setMinSize(cellWidth * mineField.width(), cellHeight * mineField.height());
+
+        final double cell = Math.min(cellWidth, cellHeight);
+        lodLevel = 0;
+        if (cell < MIN_DETAIL_SIZE) {
+            while (cell * (1 << lodLevel) < MIN_BLOCK_SIZE && lodLevel < pyramid.topLevel()) ++lodLevel;
+            // nothing flips at this size
+            for (int i = 0; i < flipCount; ++i) MineField.clearBit(flipping, flipCells[i]);
+            flipCount = 0;
+        } else {
+            font = FontFit.fontFor(cellWidth * 0.8, cellHeight * 0.8, 8);
+        }
+        canvas.setWidth(Math.min(vw, cellWidth * mineField.width()));
+        canvas.setHeight(Math.min(vh, cellHeight * mineField.height()));
+        reposition();
+    }
+
+    @Override
+    public double setZoom(double z) {
+        zoom = z;
+        resize();
+        return zoom;
+    }
+
+    // the canvas only covers the viewport, so it has to follow the scroll bars.
+    private void reposition() {
+        if (mineField == null) return;
+        final double contentW = cellWidth * mineField.width();
+        final double contentH = cellHeight * mineField.height();
+        left = Math.max(0, contentW - canvas.getWidth()) * scroller.getHvalue();
+        top = Math.max(0, contentH - canvas.getHeight()) * scroller.getVvalue();
+        canvas.setLayoutX(left);
+        canvas.setLayoutY(top);
+        x0 = (int) (left / cellWidth);
+        y0 = (int) (top / cellHeight);
+        x1 = Math.min(mineField.width(), (int) Math.ceil((left + canvas.getWidth()) / cellWidth));
+        y1 = Math.min(mineField.height(), (int) Math.ceil((top + canvas.getHeight()) / cellHeight));
+        fullRedraw = true;
+        timer.start();
+    }
+
+    @Override
+    public void refreshCell(int x, int y) {
+        markDirty(mineField.index(x, y));
+    }
+
+    @Override
+    public void refreshAll() {
+        for (int i = 0; i < flipCount; ++i) MineField.clearBit(flipping, flipCells[i]);
+        flipCount = 0;
+        fullRedraw = true;
+        timer.start();
+    }
+
+    @Override
+    public void showHints(Hints h) {
+        hints = h;
+        fullRedraw = true;
+        timer.start();
+    }
+
+    // only the on-screen cells need to flip... the rest just get painted
+    // revealed whenever they scroll into view.
+    @Override
+    public void animateReveal(RevealResult revealed) {
+        if (lodLevel > 0) {
+            fullRedraw = true;
+            timer.start();
+            return;
+        }
+        // a later batch of the same reveal carries on from the first one's rings
+        if (revealed.firstRing() == 0) revealStart = System.nanoTime();
+        for (int ring = 0; ring < revealed.ringCount(); ++ring) {
+            final long start = revealStart + (revealed.firstRing() + ring) * RING_DELAY_NANOS;
+            for (int i = revealed.ringStart(ring); i < revealed.ringEnd(ring); ++i) {
+                final int idx = revealed.cell(i);
+                if (isVisible(idx)) addFlip(idx, start, start + FLIP_NANOS);
+            }
+        }
+        timer.start();
+    }
+
+    @Override
+    public void animateWin() {
+        if (lodLevel > 0) return;
+        final long now = System.nanoTime();
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                addFlip(mineField.index(x, y), now, now + 4 * FLIP_NANOS);
+            }
+        }
+        timer.start();
+    }
+
+    @Override
+    public void animateExplosion(int x, int y) {
+        blastX = x;
+        blastY = y;
+        explodeStart = System.nanoTime();
+        timer.start();
+    }
+
+    @Override
+    public int activeAnimations() {
+        return flipCount + (exploding(System.nanoTime()) ? 1 : 0);
+    }
+
+    private boolean exploding(final long now) {
+        return explodeStart >= 0 && (now - explodeStart) < EXPLOSION_NANOS;
+    }
+
+    private void pulse() {
+        if (mineField == null) return;
+        final long now = System.nanoTime();
+
+        // while the explosion is going, everything moves every frame...
+        final boolean exploding = exploding(now);
+        if (!exploding && explodeStart >= 0) {
+            // ... and once it's over, one clean repaint, so nothing that
+            // gets painted later is drawn where the blast left it.
+            explodeStart = -1;
+            fullRedraw = true;
+        }
+        if (lodLevel > 0) {
+            // ... but blocks just sit there under the blast.
+            if (exploding || fullRedraw || dirtyCount > 0) paintSummary(now, exploding);
+            fullRedraw = false;
+            dirtyCount = 0;
+            if (!exploding) timer.stop();
+            return;
+        }
+        if (exploding || fullRedraw) {
+            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            for (int y = y0; y < y1; ++y) {
+                for (int x = x0; x < x1; ++x) {
+                    paintCell(mineField.index(x, y), now);
+                }
+            }
+            if (exploding) paintBlast(now);
+        } else {
+            for (int i = 0; i < dirtyCount; ++i) {
+                if (isVisible(dirty[i])) paintCell(dirty[i], now);
+            }
+        }
+        fullRedraw = false;
+        dirtyCount = 0;
+
+        // ... and then the flips draw over top of their cells.
+        int live = 0;
+        for (int i = 0; i < flipCount; ++i) {
+            final int idx = flipCells[i];
+            if (now >= flipEnds[i]) {
+                MineField.clearBit(flipping, idx);
+                if (isVisible(idx)) paintCell(idx, now);
+                continue;
+            }
+            if (now >= flipStarts[i] && isVisible(idx)) paintFlip(idx, now - flipStarts[i]);
+            flipCells[live] = idx;
+            flipStarts[live] = flipStarts[i];
+            flipEnds[live] = flipEnds[i];
+            ++live;
+        }
+        flipCount = live;
+
+        if (flipCount == 0 && !exploding) timer.stop();
+    }
+
+    private void paintCell(final int idx, final long now) {
+        double px = mineField.xOf(idx) * cellWidth - left;
+        double py = mineField.yOf(idx) * cellHeight - top;
+        if (exploding(now)) {
+            // fling the cell away from the blast, further the closer it was
+            final double t = Math.min(1.0, (now - explodeStart) / (double) EXPLOSION_NANOS);
+            final int dx = mineField.xOf(idx) - blastX;
+            final int dy = mineField.yOf(idx) - blastY;
+            final double dist = Math.sqrt(dx*dx + dy*dy);
+            final double strength = (dist < 0.1) ? 2.0 : (1.0/dist);
+            final long h = mix(idx);
+            px += (h & 0xFF) / 255.0 * 2.0 * strength * cellWidth * Math.signum(dx) * t;
+            py += ((h >>> 8) & 0xFF) / 255.0 * 2.0 * strength * cellHeight * Math.signum(dy) * t;
+        } else {
+            gc.clearRect(px, py, cellWidth, cellHeight);
+        }
+
+        if (mineField.isRevealed(idx) && !MineField.getBit(flipping, idx)) {
+            paintFace(idx, px, py, cellHeight);
+        } else {
+            paintBack(idx, px, py, cellHeight);
+        }
+    }
+
+    // a flip squashes the cell to nothing and opens it back up showing the
+    // other side, like the 3D tiles rotating about the X axis.
+    private void paintFlip(final int idx, final long elapsed) {
+        final double px = mineField.xOf(idx) * cellWidth - left;
+        final double py = mineField.yOf(idx) * cellHeight - top;
+        gc.clearRect(px, py, cellWidth, cellHeight);
+
+        final double phase = (elapsed % FLIP_NANOS) / (double) FLIP_NANOS;
+        final double h = cellHeight * Math.abs(Math.cos(phase * Math.PI));
+        final double hy = py + (cellHeight - h) * 0.5;
+        if (phase < 0.5) {
+            paintBack(idx, px, hy, h);
+        } else {
+            paintFace(idx, px, hy, h);
+        }
+    }
+
+    // the un-revealed side: an inner square on the tile, colored for flags.
+    private void paintBack(final int idx, final double px, final double py, final double h) {
+        gc.setFill(idx == hovered ? HOVER : OUTER);
+        gc.fillRect(px + 0.5, py + 0.5, cellWidth - 1, h - 1);
+        if (mineField.isFlagged(idx)) {
+            gc.setFill(FLAG);
+        } else if (hints != null && hints.probability(idx) >= 0) {
+            gc.setFill(TileBox.HEAT[TileBox.heatIndex(hints.probability(idx))]);
+        } else {
+            gc.setFill(INNER);
+        }
+        gc.fillRect(px + cellWidth * 0.1, py + h * 0.1, cellWidth * 0.8, h * 0.8);
+    }
+
+    // the revealed side: the neighbor count, if there is one.
+    private void paintFace(final int idx, final double px, final double py, final double h) {
+        gc.setFill(OUTER);
+        gc.fillRect(px + 0.5, py + 0.5, cellWidth - 1, h - 1);
+        final int n = mineField.countNeighbors(idx);
+        if (n > 0 && h > cellHeight * 0.5) {
+            gc.setFont(font);
+            gc.setFill(TileBox.DIGIT_COLORS[n]);
+            gc.fillText(TileBox.DIGITS[n], px + cellWidth * 0.5, py + h * 0.5);
+        }
+    }
+
+    // Zoomed out: one fill per block of 2^lodLevel x 2^lodLevel cells.  It's
+    // cheap enough to do the whole canvas whenever anything changed.
+    private void paintSummary(final long now, final boolean exploding) {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        final int k = lodLevel;
+        final double bw = cellWidth * (1 << k);
+        final double bh = cellHeight * (1 << k);
+        for (int by = y0 >> k; by <= (y1 - 1) >> k; ++by) {
+            for (int bx = x0 >> k; bx <= (x1 - 1) >> k; ++bx) {
+                final int cells = pyramid.cellsIn(k, bx, by);
+                final int r = pyramid.revealedIn(k, bx, by) * REVEAL_STEPS / cells;
+                // mines are rarely more than a fifth of a block, so that much flagged is full color
+                final int f = (int) Math.min(FLAG_STEPS, Math.ceil(pyramid.flaggedIn(k, bx, by) * FLAG_STEPS * 5.0 / cells));
+                gc.setFill(SUMMARY[r][f]);
+                // blocks on the right and bottom edges can be partial
+                gc.fillRect(bx * bw - left, by * bh - top,
+                        Math.min(bw, mineField.width() * cellWidth - bx * bw),
+                        Math.min(bh, mineField.height() * cellHeight - by * bh));
+            }
+        }
+        if (exploding) paintBlast(now);
+    }
+
+    private void paintBlast(final long now) {
+        final double t = (now - explodeStart) / (double) EXPLOSION_NANOS;
+        final double r = Math.max(cellWidth, cellHeight) * (1.0 + 6.0 * t);
+        final double cx = (blastX + 0.5) * cellWidth - left;
+        final double cy = (blastY + 0.5) * cellHeight - top;
+        gc.setGlobalAlpha(1.0 - t);
+        gc.setFill(BLAST);
+        gc.fillOval(cx - r, cy - r, r * 2, r * 2);
+        gc.setGlobalAlpha(1.0);
+    }
+
+    private void hover(final int idx) {
+        if (idx == hovered || lodLevel > 0) return;
+        final int old = hovered;
+        hovered = idx;
+        if (old >= 0) markDirty(old);
+        if (idx >= 0) markDirty(idx);
+    }
+
+    private int cellAt(final double cx, final double cy) {
+        if (mineField == null) return -1;
+        final int x = (int) ((left + cx) / cellWidth);
+        final int y = (int) ((top + cy) / cellHeight);
+        if (x < 0 || y < 0 || x >= mineField.width() || y >= mineField.height()) return -1;
+        return mineField.index(x, y);
+    }
+
+    private boolean isVisible(final int idx) {
+        final int x = mineField.xOf(idx);
+        final int y = mineField.yOf(idx);
+        return x >= x0 && x < x1 && y >= y0 && y < y1;
+    }
+
+    private void markDirty(final int idx) {
+        if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+        dirty[dirtyCount++] = idx;
+        timer.start();
+    }
+
+    private void addFlip(final int idx, final long start, final long end) {
+        if (flipCount == flipCells.length) {
+            flipCells = Arrays.copyOf(flipCells, flipCount * 2);
+            flipStarts = Arrays.copyOf(flipStarts, flipCount * 2);
+            flipEnds = Arrays.copyOf(flipEnds, flipCount * 2);
+        }
+        flipCells[flipCount] = idx;
+        flipStarts[flipCount] = start;
+        flipEnds[flipCount] = end;
+        ++flipCount;
+        MineField.setBit(flipping, idx);
+    }
+
+    // a cheap, repeatable scramble of the cell index, so each cell flies
+    // off the same way on every frame of the explosion.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Pane;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Draws an EndlessField.  There are no scroll bars for a board with no
+ * edges, so the canvas just fills the viewport and the player drags it
+ * around to look elsewhere.  Only what's on screen is ever asked for, so
+ * only those chunks of the field get built.
+ *
+ * @author richa
+ */
+final class EndlessBoard {
+
+    private static final double CELL_SIZE = 24.0;
+
+    private final Pane board;
+    private final ScrollPane scroller;
+    private final Canvas canvas = new Canvas();
+    private final GraphicsContext gc;
+    private final Font font = FontFit.fontFor(CELL_SIZE * 0.8, CELL_SIZE * 0.8, 8);
+
+    private EndlessField field;
+
+    // where the top-left corner of the canvas is, in world pixels
+    private double viewX, viewY;
+    private double dragX, dragY;
+    private int blastX, blastY;
+    private boolean blasted;
+
+    EndlessBoard(Pane board, ScrollPane scroller, BoardRenderer.CellClickHandler clickHandler) {
+        this.board = board;
+        this.scroller = scroller;
+        gc = canvas.getGraphicsContext2D();
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        canvas.setVisible(false);
+        board.getChildren().add(canvas);
+
+        canvas.setOnMousePressed(ev -> {
+            dragX = ev.getX();
+            dragY = ev.getY();
+        });
+        canvas.setOnMouseDragged(ev -> {
+            viewX -= ev.getX() - dragX;
+            viewY -= ev.getY() - dragY;
+            dragX = ev.getX();
+            dragY = ev.getY();
+            redraw();
+        });
+        canvas.setOnMouseClicked(ev -> {
+            if (field == null || !ev.isStillSincePress()) return;  // that was a drag
+            clickHandler.cellClicked((int) Math.floor((viewX + ev.getX()) / CELL_SIZE),
+                    (int) Math.floor((viewY + ev.getY()) / CELL_SIZE),
+                    ev.getButton() == MouseButton.SECONDARY);
+        });
+    }
+
+    /** Start showing a field, centered on its safe starting cell. */
+    void setField(EndlessField f) {
+        field = f;
+        blasted = false;
+        canvas.setVisible(true);
+        canvas.toFront();
+        resize();
+        viewX = CELL_SIZE * 0.5 - canvas.getWidth() * 0.5;
+        viewY = CELL_SIZE * 0.5 - canvas.getHeight() * 0.5;
+        redraw();
+    }
+
+    void clear() {
+        field = null;
+        canvas.setVisible(false);
+    }
+
+    void resize() {
+        if (field == null) return;
+        final double vw = scroller.getViewportBounds().getWidth();
+        final double vh = scroller.getViewportBounds().getHeight();
+        board.setMinSize(vw, vh);
+        canvas.setLayoutX(0);
+        canvas.setLayoutY(0);
+        canvas.setWidth(vw);
+        canvas.setHeight(vh);
+        redraw();
+    }
+
+    void showExplosion(int x, int y) {
+        blasted = true;
+        blastX = x;
+        blastY = y;
+        redraw();
+    }
+
+    void redraw() {
+        if (field == null) return;
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        gc.setFont(font);
+        final int x0 = (int) Math.floor(viewX / CELL_SIZE);
+        final int y0 = (int) Math.floor(viewY / CELL_SIZE);
+        final int x1 = (int) Math.ceil((viewX + canvas.getWidth()) / CELL_SIZE);
+        final int y1 = (int) Math.ceil((viewY + canvas.getHeight()) / CELL_SIZE);
+        // row by row, so the field's last-chunk lookup mostly hits
+        for (int y = y0; y < y1; ++y) {
+            final double py = y * CELL_SIZE - viewY;
+            for (int x = x0; x < x1; ++x) {
+                paintCell(x, y, x * CELL_SIZE - viewX, py);
+            }
+        }
+    }
+
+    private void paintCell(final int x, final int y, final double px, final double py) {
+        gc.setFill(CanvasBoard.OUTER);
+        gc.fillRect(px + 0.5, py + 0.5, CELL_SIZE - 1, CELL_SIZE - 1);
+        if (field.isRevealed(x, y)) {
+            if (blasted && x == blastX && y == blastY) {
+                gc.setFill(CanvasBoard.BLAST);
+                gc.fillOval(px + CELL_SIZE * 0.15, py + CELL_SIZE * 0.15, CELL_SIZE * 0.7, CELL_SIZE * 0.7);
+                return;
+            }
+            final int n = field.countNeighbors(x, y);
+            if (n > 0) {
+                gc.setFill(TileBox.DIGIT_COLORS[n]);
+                gc.fillText(TileBox.DIGITS[n], px + CELL_SIZE * 0.5, py + CELL_SIZE * 0.5);
+            }
+        } else {
+            gc.setFill(field.isFlagged(x, y) ? CanvasBoard.FLAG : CanvasBoard.INNER);
+            gc.fillRect(px + CELL_SIZE * 0.1, py + CELL_SIZE * 0.1, CELL_SIZE * 0.8, CELL_SIZE * 0.8);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A minefield with no edges.  The world is cut into 64x64 chunks, and a
+ * chunk's mines come purely from the world seed and the chunk's coordinates,
+ * so a chunk only gets built when someone looks at it or clicks in it, and
+ * can be thrown away and rebuilt identically later.
+ *
+ * Chunks live in an LRU cache of fixed size.  When an untouched chunk falls
+ * out of it, it's just dropped.  A chunk the player has revealed or flagged
+ * something in gets its revealed/flagged bits spilled to a temp file first,
+ * and they're read back when the chunk is rebuilt.  So memory stays bounded
+ * however far the player wanders.
+ *
+ * There's no winning, just seeing how far you get.  The 3x3 block around
+ * (0,0) never has mines, so the first click there is always safe.
+ *
+ * Trouble reading a spill file back doesn't stop the game; it's passed to
+ * the onTrouble callback as a message, for the status line.  But a chunk
+ * that can't be spilled ends the game: it's kept, so the board still shows
+ * what the player did there, but nothing more can be revealed or flagged,
+ * so the kept chunks can't outgrow what was in the cache at the time.
+ *
+ * @author richa
+ */
+public final class EndlessField {
+
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int MAX_CHUNKS = 512;        // about 2.5MB of chunks
+
+    // a click in a big empty area could flood forever at low densities, so
+    // one click only reveals this many cells.  The cells it had yet to look
+    // around are kept as the frontier, and clicking any revealed empty cell
+    // carries on from there.
+    private static final int MAX_REVEAL = 1 << 18;
+
+    // the most frontier cells kept, over all the cut-off reveals (eight or
+    // so reveals' worth on an empty board).  Past that the oldest go.
+    static final int MAX_FRONTIER = 1 << 14;
+
+    private final long seed;
+    private final int minesPerChunk;
+    private final Consumer<String> onTrouble;
+
+    private boolean lost = false;
+    private boolean stuck = false;   // a chunk couldn't be spilled
+    private long cellsRevealed;
+    private long flagsPlaced;
+
+    // a chunk is one long per row for each bitset (bit x of row y), plus a
+    // neighbor count per cell, which is only worked out when needed.
+    static final class Chunk {
+        final int cx, cy;
+        final long[] mines = new long[CHUNK_SIZE];
+        final long[] revealed = new long[CHUNK_SIZE];
+        final long[] flagged = new long[CHUNK_SIZE];
+        final Long key;   // boxed once, for the map
+        byte[] counts;
+        boolean touched;
+
+        Chunk(int cx, int cy) {
+            this.cx = cx;
+            this.cy = cy;
+            this.key = pack(cx, cy);
+        }
+    }
+
+    private final LinkedHashMap<Long, Chunk> chunks = new LinkedHashMap<>(MAX_CHUNKS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+            if (size() <= MAX_CHUNKS) return false;
+            final Chunk c = eldest.getValue();
+            if (c.touched && (stuck || !spill(c))) {
+                stuck = true;
+                kept.put(c.key, c);   // no saving it, so keep it aside
+            } else if (c == lastChunk) {
+                lastChunk = null;
+            }
+            return true;
+        }
+    };
+
+    // touched chunks that fell out of the cache after a spill failed
+    private final Map<Long, Chunk> kept = new HashMap<>();
+
+    // the last chunk looked up... cells get visited in runs, so this saves
+    // boxing a key and loading a chunk for most lookups.  A hit still goes
+    // through the map, to keep the LRU order up to date.
+    private Chunk lastChunk;
+
+    private final Path spillParent;
+    private Path spillDir;   // made on the first spill
+
+    // reused by every reveal
+    private long[] queue = new long[256];
+
+    // revealed empty cells a cut-off reveal hadn't looked around yet
+    private long[] frontier = new long[0];
+    private int frontierSize;
+
+    public EndlessField(double pct, long seed, Consumer<String> onTrouble) {
+        this(pct, seed, null, onTrouble);
+    }
+
+    // with the spill directory made in spillParent, rather than wherever
+    // temp files go
+    EndlessField(double pct, long seed, Path spillParent, Consumer<String> onTrouble) {
+        this.seed = seed;
+        this.spillParent = spillParent;
+        this.onTrouble = onTrouble;
+        this.minesPerChunk = (int) Math.max(0, Math.min(CHUNK_SIZE * CHUNK_SIZE, Math.round(pct * CHUNK_SIZE * CHUNK_SIZE)));
+    }
+
+    public long seed() { return seed; }
+    /** @return true once a mine's gone off, or a chunk couldn't be spilled. */
+    public boolean isOver() { return lost || stuck; }
+    public boolean isLost() { return lost; }
+    public long cellsRevealed() { return cellsRevealed; }
+    public long flagsPlaced() { return flagsPlaced; }
+
+    /** @return how many chunks are in memory right now. */
+    public int chunksLoaded() { return chunks.size() + kept.size(); }
+
+    /** @return true if a reveal was cut off, and clicking an empty cell will carry it on. */
+    public boolean hasFrontier() { return frontierSize > 0; }
+
+    int frontierCells() { return frontierSize; }
+
+    public boolean hasBomb(int x, int y) {
+        return bit(chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT).mines, x, y);
+    }
+
+    public boolean isRevealed(int x, int y) {
+        return bit(chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT).revealed, x, y);
+    }
+
+    public boolean isFlagged(int x, int y) {
+        return bit(chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT).flagged, x, y);
+    }
+
+    // mines store a count of 0, like MineField
+    public int countNeighbors(int x, int y) {
+        final Chunk c = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        if (c.counts == null) fillCounts(c);
+        return c.counts[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)];
+    }
+
+    /**
+     * The player clicked on (x,y).  Flagged cells are ignored, and a mine
+     * ends the game.  Clicking an empty cell that's already revealed
+     * carries on a reveal that was cut off.
+     *
+     * @return how many cells were revealed, or -1 if it was a mine.
+     */
+    public int open(final int x, final int y) {
+        if (isOver() || isFlagged(x, y)) return 0;
+        if (hasBomb(x, y)) {
+            final Chunk c = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+            c.revealed[y & CHUNK_MASK] |= 1L << x;
+            c.touched = true;
+            lost = true;
+            return -1;
+        }
+
+        // BFS, as in MineField.revealFrom, with cells packed into longs
+        int revealedNow = 0;
+        int tail = 0;
+        if (reveal(x, y)) {
+            ++revealedNow;
+        } else if (countNeighbors(x, y) != 0) {
+            return 0;
+        } else {
+            // already open and empty: pick up the frontier too
+            if (frontierSize >= queue.length) queue = Arrays.copyOf(queue, frontierSize * 2);
+            System.arraycopy(frontier, 0, queue, 0, frontierSize);
+            tail = frontierSize;
+            frontierSize = 0;
+        }
+        if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+        queue[tail++] = pack(x, y);
+        int head = 0;
+        // (and stop if a spill fails on the way)
+        for (; head < tail && revealedNow < MAX_REVEAL && !stuck; ++head) {
+            final int cx = (int) (queue[head] >> 32);
+            final int cy = (int) queue[head];
+            if (countNeighbors(cx, cy) > 0) continue;
+            for (int ny = cy - 1; ny <= cy + 1; ++ny) {
+                for (int nx = cx - 1; nx <= cx + 1; ++nx) {
+                    if (!reveal(nx, ny)) continue;
+                    ++revealedNow;
+                    if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+                    queue[tail++] = pack(nx, ny);
+                }
+            }
+        }
+        if (head < tail) keepFrontier(head, tail);
+        return revealedNow;
+    }
+
+    // What a cut-off reveal didn't get to, added to what's left of earlier
+    // ones.  Cells in chunks that have left memory since are dropped: the
+    // edge of the cleared area is still there to click on when the player
+    // goes back, and otherwise the frontier would grow with every far-off
+    // click.  Then only the newest MAX_FRONTIER are kept.
+    private void keepFrontier(final int head, final int tail) {
+        int left = 0;
+        for (int i = 0; i < frontierSize; ++i) {
+            if (inMemory(frontier[i])) frontier[left++] = frontier[i];
+        }
+        final int n = tail - head;
+        if (left + n > frontier.length) {
+            frontier = Arrays.copyOf(frontier, Math.min(MAX_FRONTIER + n, Math.max(left + n, frontier.length * 2)));
+        }
+        for (int i = head; i < tail; ++i) {
+            if (inMemory(queue[i])) frontier[left++] = queue[i];
+        }
+        if (left > MAX_FRONTIER) {
+            System.arraycopy(frontier, left - MAX_FRONTIER, frontier, 0, MAX_FRONTIER);
+            left = MAX_FRONTIER;
+        }
+        frontierSize = left;
+    }
+
+    // whether a packed cell's chunk is loaded, without loading it (or
+    // touching the LRU order)
+    private boolean inMemory(final long cell) {
+        final int cx = (int) (cell >> 32) >> CHUNK_SHIFT;
+        final int cy = (int) cell >> CHUNK_SHIFT;
+        final Long key = pack(cx, cy);
+        return chunks.containsKey(key) || kept.containsKey(key);
+    }
+
+    /**
+     * Set or unset a flag on an unrevealed cell.
+     * @return the new flagged state of the cell.
+     */
+    public boolean toggleFlag(final int x, final int y) {
+        final Chunk c = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        final int row = y & CHUNK_MASK;
+        if (isOver() || bit(c.revealed, x, y)) return bit(c.flagged, x, y);
+        c.flagged[row] ^= 1L << x;
+        c.touched = true;
+        final boolean nowFlagged = bit(c.flagged, x, y);
+        flagsPlaced += nowFlagged ? 1 : -1;
+        return nowFlagged;
+    }
+
+    /** Throw away the spilled chunks.  The field shouldn't be used after this. */
+    public void close() {
+        chunks.clear();
+        kept.clear();
+        lastChunk = null;
+        frontierSize = 0;
+        if (spillDir == null) return;
+        try (Stream<Path> files = Files.list(spillDir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+            Files.deleteIfExists(spillDir);
+        } catch (IOException e) {
+            onTrouble.accept("Couldn't clean up " + spillDir + ": " + e.getMessage());
+        }
+        spillDir = null;
+    }
+
+    // reveals a single safe cell (dropping any flag on it), and returns true
+    // if it wasn't already revealed.
+    private boolean reveal(final int x, final int y) {
+        final Chunk c = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        final int row = y & CHUNK_MASK;
+        final long mask = 1L << x;   // shifts only use the low 6 bits
+        if ((c.revealed[row] & mask) != 0) return false;
+        c.revealed[row] |= mask;
+        if ((c.flagged[row] & mask) != 0) {
+            c.flagged[row] &= ~mask;
+            --flagsPlaced;
+        }
+        c.touched = true;
+        ++cellsRevealed;
+        return true;
+    }
+
+    private static boolean bit(final long[] rows, final int x, final int y) {
+        return (rows[y & CHUNK_MASK] & (1L << x)) != 0;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private Chunk chunk(final int cx, final int cy) {
+        final Chunk last = lastChunk;
+        if (last != null && last.cx == cx && last.cy == cy) {
+            chunks.get(last.key);
+            return last;
+        }
+        final Long key = pack(cx, cy);
+        Chunk c = chunks.get(key);
+        if (c == null) c = kept.get(key);
+        if (c == null) {
+            c = load(cx, cy);
+            chunks.put(key, c);
+        }
+        lastChunk = c;
+        return c;
+    }
+
+    // Builds a chunk's mines from the seed (the same way every time), then
+    // picks up whatever the player did there, if it was spilled earlier.
+    private Chunk load(final int cx, final int cy) {
+        final Chunk c = new Chunk(cx, cy);
+        final SplittableRandom rnd = new SplittableRandom(mix(seed ^ mix(pack(cx, cy))));
+        final int cells = CHUNK_SIZE * CHUNK_SIZE;
+        // Floyd's sampling, as in MineField
+        for (int j = cells - minesPerChunk; j < cells; ++j) {
+            int idx = rnd.nextInt(j + 1);
+            if ((c.mines[idx >>> CHUNK_SHIFT] & (1L << idx)) != 0) idx = j;
+            c.mines[idx >>> CHUNK_SHIFT] |= 1L << idx;
+        }
+        // keep the start safe
+        for (int y = -1; y <= 1; ++y) {
+            for (int x = -1; x <= 1; ++x) {
+                if ((x >> CHUNK_SHIFT) == cx && (y >> CHUNK_SHIFT) == cy) {
+                    c.mines[y & CHUNK_MASK] &= ~(1L << x);
+                }
+            }
+        }
+        if (spillDir != null) unspill(c);
+        return c;
+    }
+
+    // counts for every cell of the chunk, from a 66x66 patch of mines that
+    // includes the border of the eight chunks around it.
+    private void fillCounts(final Chunk c) {
+        final int span = CHUNK_SIZE + 2;
+        final boolean[] patch = new boolean[span * span];
+        final int baseX = (c.cx << CHUNK_SHIFT) - 1;
+        final int baseY = (c.cy << CHUNK_SHIFT) - 1;
+        for (int py = 0; py < span; ++py) {
+            for (int px = 0; px < span; ++px) {
+                patch[py * span + px] = hasBomb(baseX + px, baseY + py);
+            }
+        }
+        final byte[] counts = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        for (int y = 0; y < CHUNK_SIZE; ++y) {
+            for (int x = 0; x < CHUNK_SIZE; ++x) {
+                final int p = (y + 1) * span + (x + 1);
+                if (patch[p]) continue;
+                int n = 0;
+                for (int dy = -span; dy <= span; dy += span) {
+                    if (patch[p + dy - 1]) ++n;
+                    if (patch[p + dy]) ++n;
+                    if (patch[p + dy + 1]) ++n;
+                }
+                counts[(y << CHUNK_SHIFT) | x] = (byte) n;
+            }
+        }
+        c.counts = counts;
+    }
+
+    private Path spillFile(final Chunk c) {
+        return spillDir.resolve(c.cx + "_" + c.cy + ".chunk");
+    }
+
+    // the revealed and flagged rows, little-endian
+    private boolean spill(final Chunk c) {
+        try {
+            if (spillDir == null) {
+                spillDir = (spillParent == null) ? Files.createTempDirectory("jfxmines-endless")
+                                                 : Files.createTempDirectory(spillParent, "jfxmines-endless");
+            }
+            final ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE * 16).order(ByteOrder.LITTLE_ENDIAN);
+            buf.asLongBuffer().put(c.revealed).put(c.flagged);
+            Files.write(spillFile(c), buf.array());
+            return true;
+        } catch (IOException e) {
+            onTrouble.accept("Couldn't spill chunk " + c.cx + "," + c.cy + ", so the game stops here: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void unspill(final Chunk c) {
+        try {
+            final byte[] bytes = Files.readAllBytes(spillFile(c));
+            final ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            buf.asLongBuffer().get(c.revealed).get(c.flagged);
+            c.touched = true;
+        } catch (NoSuchFileException e) {
+            // never touched, so nothing to restore
+        } catch (IOException e) {
+            onTrouble.accept("Couldn't read back chunk " + c.cx + "," + c.cy + ": " + e.getMessage());
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
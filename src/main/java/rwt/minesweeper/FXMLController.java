@@ -4,135 +4,436 @@
  */
 package rwt.minesweeper;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import javafx.animation.Animation;
-import javafx.animation.ParallelTransition;
-import javafx.animation.Transition;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
-import javafx.scene.Parent;
+import javafx.geometry.Point2D;
 import javafx.scene.Scene;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Label;
-import javafx.scene.input.MouseButton;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Slider;
+import javafx.scene.control.Toggle;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
-import javafx.util.Duration;
 
-public class FXMLController {
+public class FXMLController implements GameListener {
 
     @FXML private Pane board;
     @FXML private StackPane overlays;
+    @FXML private ScrollPane scroller;
     
     // a status text property to bind to FXML... 
     private StringProperty _statusTextProperty = new SimpleStringProperty("Ok.");
     public StringProperty statusTextProperty() { return _statusTextProperty; }
     public String getStatusText() { return _statusTextProperty.get(); }
-    public void setStatusText(String s) { _statusTextProperty.set(s); }
+    public final void setStatusText(String s) { _statusTextProperty.set(s); }
     
     // Here's the state we care about...
     private int rowTiles = 20;
     private int colTiles = 20;
     private double pctBombs = 0.1;
+    private RenderMode renderMode = RenderMode.AUTO;
     
     // most of the work of this controller is coordinating the MineField with
-    // its visual representation in TileBoxes...
-    private MineField   mineField;
-    private TileBox[][] mineFieldView;
+    // its visual representation in one of the BoardRenderers...
+    // The game itself is played on the engine's thread; mineField is the
+    // engine's copy of it for the FX thread, which follows along a pulse
+    // behind.
+    private final GameEngine engine = new GameEngine(this::historyChanged, this::changesApplied,
+            this::clickShown, this::engineFailed);
+    private MineField mineField;
+    private BoardRenderer tileBoard, meshBoard, canvasBoard;
+    private BoardRenderer renderer;
+    
+    // The mouse wheel zooms, in the current renderer's terms (1 is its usual
+    // size).  In AUTO mode, a board big enough for the canvas switches to
+    // the 3D mesh once it's zoomed in as far as the tiles' smallest size,
+    // and back when it's zoomed out again.
+    private static final double ZOOM_STEP = 1.25;
+    private static final double MAX_ZOOM = 8.0;
+    private static final double CANVAS_TO_TILES = TileBoard.MIN_CELL_SIZE / CanvasBoard.MIN_CELL_SIZE;
+    private double zoom = 1.0;
+    
+    // the Solver's hints, worked out in the background whenever they're on
+    private HintEngine hintEngine;
+    private boolean hintsOn = false;
+    private boolean hintsWanted = false;  // waiting for the copy to catch up with a move
+    @FXML private CheckMenuItem hintsMenuItem;
+    
+    // the performance numbers, when they're wanted
+    private PerfHud hud;
+    @FXML private CheckMenuItem hudMenuItem;
+    
+    // no-guess boards come from the generator, in the background
+    private static final long NO_GUESS_TIME_LIMIT = 10_000_000_000L;
+    private final NoGuessGenerator generator = new NoGuessGenerator();
+    // generate() waits on the generator's own pool, so it's called from
+    // here... and the next game is built on a thread of its own, at low
+    // priority, so nobody's waiting on it
+    private final ExecutorService boardMaker = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("minesweeper-boards").daemon().factory());
+    private final ExecutorService pregenerator = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("minesweeper-next-board").daemon().priority(Thread.MIN_PRIORITY).factory());
+    private boolean noGuess = false;
+    private boolean safeFirstClick = false;  // mines go down after the first click
+    private boolean generating = false;
+    private int boardGeneration = 0;  // so stale boards from the generator get dropped
+    private String boardInfo = "";
+    
+    // endless mode has its own engine and renderer... while it's on, the
+    // regular board is hidden.  It doesn't go through the GameEngine: its
+    // clicks run here on the FX thread, because EndlessBoard reads the
+    // field (and loads chunks into it) as it draws.  A click reveals at
+    // most 256K cells, which can still cost a few frames.
+    private EndlessField endless;
+    private String endlessTrouble;
+    private EndlessBoard endlessBoard;
+    
+    // the moves made in the current game, and the replay of them
+    private MoveLog moves = new MoveLog();
+    
+    // the undo history, as a slider, and whether the board has been blown
+    // up (or won) and needs putting back together if the game is taken back
+    @FXML private Slider historySlider;
+    private boolean updatingSlider = false;
+    private boolean boardWrecked = false;
+    private long gameStart;
+    @FXML private ToggleGroup replaySpeed;
+    private boolean replaying = false;
+    private MoveLog replayMoves;
+    private int replayNext;
+    private double replayClock;  // replay time in ms, which runs at the chosen speed
+    private long replayLast;
+    private final AnimationTimer replayTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            replayStep(now);
+        }
+    };
+    
+    // Size changes arrive in bursts (width and height separately, every
+    // step of a window drag), so they are coalesced into a single resize
+    // that runs once the current burst of events is done.
+    private boolean resizePending = false;
+    
+    public void requestResize() {
+        if(resizePending) return;
+        resizePending = true;
+        Platform.runLater(this::resize);
+    }
     
     public void resize() {
-        
-        final double height =  board.getHeight() / rowTiles;
-        final double width = board.getWidth() / colTiles;
-
-        for(int y = 0; y < rowTiles; ++y) {
-            for(int x = 0; x < colTiles; ++x) {
-                TileBox b = mineFieldView[x][y];
-                b.setNewSize(width,height);
-                b.setPrefSize(width, height);
-                b.setLayoutX(x*width);
-                b.setLayoutY(y*height);
-            }
+        resizePending = false;
+        final JfrEvents.Resize ev = new JfrEvents.Resize();
+        ev.begin();
+        if(endless != null) endlessBoard.resize();
+        else if(renderer != null) renderer.resize();
+        ev.width = scroller.getViewportBounds().getWidth();
+        ev.height = scroller.getViewportBounds().getHeight();
+        ev.commit();
+    }
+    
+    // some bookkeeping before anything new goes on the board
+    private void clearBoard() {
+        stopReplay();
+        generating = false;
+        if(awaited != null) awaited.cancel();  // nobody wants that board now
+        awaited = null;
+        if(endless != null) {
+            endless.close();
+            endless = null;
+            endlessBoard.clear();
         }
+        overlays.getChildren().retainAll(board);
+        hud.reattach();
+        board.getStyleClass().clear();
+        boardWrecked = false;
+        cancelHints();
     }
     
     private void setupBoard() {
-        // some initial bookkeeping...
-        overlays.getChildren().clear();
-        board.getChildren().clear();
-        board.getStyleClass().clear();
-                
-        mineField = new MineField(colTiles, rowTiles, pctBombs);
-        _statusTextProperty.set("There are " + Integer.toString(mineField.howManyMines()) + " mines.");
+        final JfrEvents.SetupBoard ev = new JfrEvents.SetupBoard();
+        ev.begin();
+        ev.width = colTiles;
+        ev.height = rowTiles;
+        ev.noGuess = noGuess;
+        clearBoard();
+        final int gen = ++boardGeneration;
+        
+        final PendingGame game = takeNextGame();
+        if(!noGuess || game.result.isDone()) {
+            // usually this was built while the last game was played, so
+            // there's no waiting at all.
+            startGame(game.result.join());
+            ev.commit();
+            return;
+        }
+        ev.commit();
         
-        mineFieldView = new TileBox[colTiles][rowTiles];
+        // no-guess boards can take a while to find, so we wait for them
+        // in the background... the old board just sits there meanwhile.
+        generating = true;
+        awaited = game;
+        setStatusText("Looking for a board that needs no guessing...");
+        game.result.thenAccept(result -> Platform.runLater(() -> {
+            if(gen != boardGeneration) return;  // they asked for another game since
+            startGame(result);
+        }));
+    }
+    
+    private void startGame(NoGuessGenerator.Result result) {
+        generating = false;
+        awaited = null;
+        boardInfo = !noGuess ? "" : String.format(" (%s after %d tries, %d ms)",
+                result.isNoGuess() ? "no-guess board" : "gave up, ordinary board",
+                result.attempts(), result.nanos() / 1_000_000);
+        installField(result.field(), new MoveLog());
+        if(result.startX() >= 0) play(result.startX(), result.startY(), false, 0);
+        nextGame = new PendingGame(colTiles, rowTiles, pctBombs, noGuess, safeFirstClick, true);
+    }
+    
+    // While a game is played, the next one is built in the background with
+    // the same options, so New Game doesn't have to wait for it.  That's on
+    // one low-priority thread, so a hard no-guess board can't keep every
+    // core busy while the player sits on the last game's end.
+    private PendingGame nextGame;
+    private PendingGame awaited;  // the one the player is waiting for, if any
+    
+    private PendingGame takeNextGame() {
+        PendingGame game = nextGame;
+        nextGame = null;
+        if(game == null || !game.matches(colTiles, rowTiles, pctBombs, noGuess, safeFirstClick)
+                || !game.result.isDone()) {
+            // the options changed, or it isn't ready... and now that the
+            // player is waiting, it's worth all the cores to find one
+            if(game != null) game.cancel();
+            game = new PendingGame(colTiles, rowTiles, pctBombs, noGuess, safeFirstClick, false);
+        }
+        return game;
+    }
+    
+    private final class PendingGame {
+        final int w, h;
+        final double pct;
+        final boolean noGuess, safeFirstClick;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CompletableFuture<NoGuessGenerator.Result> result;
         
-        final double height =  board.getHeight() / rowTiles;
-        final double width = board.getWidth() / colTiles;
+        final boolean ahead;  // built ahead of time, on the low-priority thread
         
-        for(int y = 0; y < rowTiles; ++y) {
-            for(int x = 0; x < colTiles; ++x) {
-                final TileBox b = new TileBox(width, height, mineField.countNeighbors(x, y));
-                mineFieldView[x][y] = b;
-                b.setPrefSize(width, height);
-                b.setLayoutX(x*width);
-                b.setLayoutY(y*height);
-                b.setScaleShape(true);
-                b.setSnapToPixel(false);
-                b.getStyleClass().add("cell");
-                final int theX = x; 
-                final int theY = y;
-                b.setOnMouseClicked( ev -> { 
-                    if(ev.getButton() == MouseButton.SECONDARY) {
-                        handleRightClick(theX, theY);
-                    } else {
-                        handleClick(theX, theY);
-                    }
-                });
-                board.getChildren().add(b);                  
-            }  
+        PendingGame(int w, int h, double pct, boolean noGuess, boolean safeFirstClick, boolean ahead) {
+            this.w = w;
+            this.h = h;
+            this.pct = pct;
+            this.noGuess = noGuess;
+            this.safeFirstClick = safeFirstClick;
+            this.ahead = ahead;
+            result = CompletableFuture.supplyAsync(this::build, ahead ? pregenerator : boardMaker);
+        }
+        
+        private NoGuessGenerator.Result build() {
+            if(noGuess && ahead) return generator.generateAlone(w, h, pct, NO_GUESS_TIME_LIMIT, cancelled::get);
+            if(noGuess) return generator.generate(w, h, pct, NO_GUESS_TIME_LIMIT, cancelled::get);
+            final long start = System.nanoTime();
+            return new NoGuessGenerator.Result(
+                    new MineField(w, h, pct, ThreadLocalRandom.current().nextLong(), safeFirstClick), -1, -1, 1,
+                    System.nanoTime() - start, false);
+        }
+        
+        boolean matches(int w, int h, double pct, boolean noGuess, boolean safeFirstClick) {
+            return this.w == w && this.h == h && this.pct == pct
+                    && this.noGuess == noGuess && this.safeFirstClick == safeFirstClick;
         }
-        overlays.getChildren().add(board);
-        Platform.runLater(System::gc);
+        
+        void cancel() { cancelled.set(true); }
     }
     
-    // if the only un-flipped tiles are bombs, you win!
-    private void checkForWin() {
-        for(int y = 0; y < rowTiles; y++) {
-            for(int x = 0; x < colTiles; x++) {
-                if(!mineFieldView[x][y].hasFlipped() && 
-                        !mineField.hasBomb(x, y)) {
-                    return; // still more spots left!
-                }
+    private void installField(MineField mf, MoveLog log) {
+        if(mineField != null) mineField.removeListener(this);
+        moves = log;
+        mineField = engine.start(mf, log.size());
+        mineField.addListener(this);
+        gameStart = System.nanoTime();
+        updateStatus();
+        
+        // pick a renderer, and make sure the others let go of the board
+        // (the current one too, so resetting the zoom doesn't re-layout the
+        // old board)
+        final BoardRenderer wanted = switch (renderMode.resolve(mineField.cellCount())) {
+            case CANVAS -> canvasBoard;
+            case MESH -> meshBoard;
+            default -> tileBoard;
+        };
+        zoom = 1.0;
+        showOn(wanted);
+        if(hintsOn) requestHints();
+    }
+    
+    private void showOn(BoardRenderer r) {
+        renderer.clear();
+        renderer = r;
+        renderer.setZoom(zoom);
+        renderer.setField(mineField);
+    }
+    
+    // zooms by factor, keeping the cell at (bx,by) on the board under the mouse
+    private void zoomBy(double factor, double bx, double by) {
+        final Bounds vp = scroller.getViewportBounds();
+        final double oldW = board.getMinWidth();
+        final double oldH = board.getMinHeight();
+        final double vx = bx - Math.max(0, oldW - vp.getWidth()) * scroller.getHvalue();
+        final double vy = by - Math.max(0, oldH - vp.getHeight()) * scroller.getVvalue();
+        
+        double wanted = Math.min(MAX_ZOOM, zoom * factor);
+        BoardRenderer next = renderer;
+        if(renderMode == RenderMode.AUTO && renderMode.resolve(mineField.cellCount()) == RenderMode.CANVAS) {
+            if(renderer == canvasBoard && wanted >= CANVAS_TO_TILES) {
+                next = meshBoard;
+                wanted /= CANVAS_TO_TILES;
+            } else if(renderer == meshBoard && wanted < 1.0) {
+                next = canvasBoard;
+                wanted *= CANVAS_TO_TILES;
             }
         }
+        if(next != renderer) {
+            zoom = wanted;
+            showOn(next);
+            if(hintsOn && !mineField.isOver()) requestHints();
+        } else {
+            zoom = renderer.setZoom(wanted);
+        }
         
-        // if we got here, you won!  Animate all the tiles endlessly...
-        List<Transition> lst = new ArrayList<>();
-        for(int y = 0; y < rowTiles; y++) {
-            for(int x = 0; x < colTiles; x++) {
-                lst.add(mineFieldView[x][y].flip(Duration.ZERO));
-            }
+        final double kx = board.getMinWidth() / oldW;
+        final double ky = board.getMinHeight() / oldH;
+        scroller.setHvalue(clamp01((bx * kx - vx) / Math.max(1, board.getMinWidth() - vp.getWidth())));
+        scroller.setVvalue(clamp01((by * ky - vy) / Math.max(1, board.getMinHeight() - vp.getHeight())));
+    }
+    
+    private static double clamp01(double v) {
+        return Math.max(0.0, Math.min(1.0, v));
+    }
+    
+    // Flags only mark the status line stale; it's re-worded at most once a
+    // pulse, when the engine's changes for that pulse are all in.
+    private boolean statusStale = false;
+    private final StringBuilder statusText = new StringBuilder();
+    
+    private void updateStatus() {
+        statusStale = false;
+        statusText.setLength(0);
+        statusText.append("There are ").append(mineField.howManyMines()).append(" mines, ")
+                .append(mineField.minesRemaining()).append(" left to flag.").append(boardInfo);
+        setStatusText(statusText.toString());
+    }
+    
+    private void changesApplied() {
+        if(statusStale) updateStatus();
+        if(hintsWanted) requestHints();
+    }
+    
+    // Hints are worked out from the engine's version of the board, so a
+    // request waits until the copy has caught up with a whole move.
+    private void requestHints() {
+        final BoardVersion v = engine.settledVersion();
+        hintsWanted = (v == null);
+        if(v != null) hintEngine.request(mineField, v);
+    }
+    
+    private void cancelHints() {
+        hintsWanted = false;
+        hintEngine.cancel();
+    }
+    
+    private void hintsFailed(Throwable ex) {
+        setHintsOn(false);
+        setStatusText("Couldn't work out hints: " + ex);
+    }
+    
+    private void engineFailed(Throwable ex) {
+        statusStale = false;  // so the next pulse doesn't cover it up
+        setStatusText("Couldn't make that move: " + ex);
+    }
+    
+    private void clickShown(long clickNanos) {
+        hud.clickShown(clickNanos);
+    }
+    
+    private void handleCellClick(final int x, final int y, final boolean secondary) {
+        if(generating || replaying || endless != null) return;
+        play(x, y, secondary, System.nanoTime());
+    }
+    
+    // every move goes in the log, for saving and replays.  clickNanos is
+    // when the player clicked, or 0 for a move they didn't make by hand.
+    private void play(final int x, final int y, final boolean secondary, final long clickNanos) {
+        moves.add((int)((System.nanoTime() - gameStart) / 1_000_000), mineField.index(x, y), secondary);
+        if(secondary) {
+            engine.toggleFlag(x, y, moves.size(), clickNanos);
+        } else {
+            engine.open(x, y, moves.size(), clickNanos);  // flagged cells are safe from accidental clicks
+        }
+    }
+    
+    // The MineField copy tells us what happened as a result of each click,
+    // once the engine has worked it out...
+    
+    @Override
+    public void cellsRevealed(MineField mf, RevealResult revealed) {
+        renderer.animateReveal(revealed);
+        if(hintsOn && !mf.isOver()) {
+            renderer.showHints(null);  // they're stale now
+            requestHints();
         }
-        ParallelTransition endgame = new ParallelTransition();
-        endgame.setCycleCount(4);
-        endgame.getChildren().addAll(lst);
+    }
+    
+    @Override
+    public void cellFlagged(MineField mf, int x, int y, boolean flagged) {
+        renderer.refreshCell(x, y);
+        statusStale = true;
+    }
+    
+    // if the only un-flipped tiles are bombs, you win!
+    @Override
+    public void gameWon(MineField mf) {
+        cancelHints();
+        renderer.showHints(null);
+        // Animate all the tiles endlessly...
+        statusStale = false;
         setStatusText("You Win!");       
-        endgame.play();
+        boardWrecked = true;
+        renderer.animateWin();
         Label winner = new Label("You Win!!!");
         winner.setTranslateZ(-50.0);
         winner.setFont(Font.font(40));
@@ -142,74 +443,101 @@ public class FXMLController {
         overlays.getChildren().add(winner);
     }
     
-    private void handleClick(final int x, final int y) { 
-        if(mineFieldView[x][y].isFlagged()) return; // can't accidentally die!
-        
-        if(mineField.hasBomb(x, y)) {
-            handleExplosion(x,y);
-        } else {
-            handleNormalClick(x,y);
-            checkForWin();
-        }
-        Platform.runLater(System::gc);
+    @Override
+    public void gameLost(MineField mf, int x, int y) {
+        cancelHints();
+        renderer.showHints(null);
+        board.getStyleClass().add("sploded");
+        boardWrecked = true;
+        final JfrEvents.Explosion ev = new JfrEvents.Explosion();
+        ev.begin();
+        renderer.animateExplosion(x, y);
+        ev.x = x;
+        ev.y = y;
+        ev.commit();
     }
 
-    private void handleRightClick(final int x, final int y) {
-        mineFieldView[x][y].flag();
+    // Undo and redo go through the engine, which keeps the history.  The
+    // moves that get undone come out of the MoveLog straight away, so a
+    // save or replay never includes them.
+    
+    @FXML
+    private void btnUndo(ActionEvent e) {
+        goTo(engine.historyPosition() - 1);
     }
     
-    private void recursiveFlip(int x, int y, final int origX, final int origY, List<Transition> flips) {
-        // done already if we've already been flipped...
-        if(mineFieldView[x][y].hasFlipped()) return;
-
-        // delay is relative to distance form origin...
-        double dist = Math.sqrt((x - origX)*(x - origX)+(y-origY)*(y-origY));
-        flips.add(mineFieldView[x][y].flip(Duration.seconds(dist*0.04)));
-
-        // now, flip neighbors, unless we had a number showing...
-        if(mineField.countNeighbors(x, y) > 0) return;
-        
-        int minx = Math.max(x-1,0);
-        int maxx = Math.min(x+1,mineFieldView.length-1);
-        int miny = Math.max(y-1,0);
-        int maxy = Math.min(y+1,mineFieldView[0].length-1);
-        for (y = miny; y <= maxy; ++y) {
-           for (x = minx; x <= maxx; ++x) {
-               recursiveFlip(x,y,origX,origY,flips);
-           }
+    @FXML
+    private void btnRedo(ActionEvent e) {
+        goTo(engine.historyPosition() + 1);
+    }
+    
+    private void goTo(int index) {
+        if(generating || replaying || endless != null || index < 0 || index >= engine.historySize()) {
+            historyChanged();  // in case it was the slider that moved
+            return;
         }
-     
+        moves.truncate(engine.movesAt(index));
+        engine.goTo(index);
     }
-    private void handleNormalClick(final int x, final int y) {
-        List<Transition> transitions = new ArrayList<>();
-        recursiveFlip(x, y, x, y, transitions);
-        ParallelTransition pt = new ParallelTransition();
-        pt.getChildren().addAll(transitions);
-        pt.play();
+    
+    private void historyChanged() {
+        updatingSlider = true;
+        historySlider.setMax(Math.max(1, engine.historySize() - 1));
+        historySlider.setValue(engine.historyPosition());
+        historySlider.setDisable(engine.historySize() < 2);
+        updatingSlider = false;
     }
     
-    private void handleExplosion(final int x, final int y) {
-        board.getStyleClass().add("sploded");
-        
-        List<Animation> animations = new java.util.ArrayList<>();
-        for(int mfy = 0; mfy < rowTiles; ++mfy) {
-            for(int mfx = 0; mfx < colTiles; ++mfx) {
-                
-                animations.add(mineFieldView[mfx][mfy].explode(mfx - x, mfy - y));
-            }
-        }        
-        
-        ParallelTransition pt = new ParallelTransition();
-        pt.getChildren().addAll(animations);
-        pt.play();        
+    @Override
+    public void boardRestored(MineField mf) {
+        cancelHints();
+        renderer.showHints(null);
+        if(boardWrecked) {
+            // the explosion or the victory dance has to be undone too
+            boardWrecked = false;
+            overlays.getChildren().retainAll(board);
+            hud.reattach();
+            board.getStyleClass().remove("sploded");
+            renderer.setField(mf);
+        } else {
+            renderer.refreshAll();
+        }
+        updateStatus();
+        if(mf.getState() == MineField.State.LOST) {
+            board.getStyleClass().add("sploded");
+            boardWrecked = true;
+        } else if(mf.getState() == MineField.State.WON) {
+            setStatusText("You Win!");
+        } else if(hintsOn) {
+            requestHints();
+        }
     }
 
+    private void setHintsOn(boolean on) {
+        hintsOn = on;
+        hintsMenuItem.setSelected(on);
+        if(endless != null) return;  // the Solver needs a board with edges
+        if(on && !mineField.isOver()) {
+            requestHints();
+        } else {
+            cancelHints();
+            renderer.showHints(null);
+        }
+    }
+    
     // pressing the 'n' key starts a new game....    
+    // ... 'h' toggles the hints, and 'p' the performance HUD
     @FXML
     private void keyTyped(javafx.scene.input.KeyEvent kev) {
-        if ("n".equals(kev.getCharacter())) {
+        if ("h".equals(kev.getCharacter())) {
             kev.consume();
-            if (board.getStyleClass().contains("sploded")) {
+            setHintsOn(!hintsOn);
+        } else if ("p".equals(kev.getCharacter())) {
+            kev.consume();
+            setHudOn(!hud.isShowing());
+        } else if ("n".equals(kev.getCharacter())) {
+            kev.consume();
+            if (isOver()) {
                 // if the game was over, start a new game...
                 setupBoard();
             } else {
@@ -225,8 +553,35 @@ public class FXMLController {
 
     }
     
+    /** The app is closing: stop the engine, and anything else that's still going. */
+    public void shutdown() {
+        clearBoard();  // stops a replay, and deletes an endless game's spill files
+        if(nextGame != null) nextGame.cancel();
+        boardMaker.shutdown();
+        pregenerator.shutdown();
+        engine.close();
+    }
+    
     @FXML
     public void initialize() {
+        tileBoard = new TileBoard(board, scroller, this::handleCellClick);
+        endlessBoard = new EndlessBoard(board, scroller, this::handleEndlessClick);
+        hud = new PerfHud(overlays, () -> (endless != null) ? 0 : renderer.activeAnimations());
+        meshBoard = new MeshBoard(board, scroller, this::handleCellClick);
+        canvasBoard = new CanvasBoard(board, scroller, this::handleCellClick);
+        renderer = tileBoard;
+        hintEngine = new HintEngine(h -> renderer.showHints(h), this::hintsFailed);
+        scroller.viewportBoundsProperty().addListener((obs, ov, nv) -> requestResize());
+        historySlider.valueProperty().addListener((obs, ov, nv) -> {
+            if(!updatingSlider) goTo((int) Math.round(nv.doubleValue()));
+        });
+        scroller.addEventFilter(ScrollEvent.SCROLL, ev -> {
+            if(endless != null || mineField == null || ev.getDeltaY() == 0) return;
+            ev.consume();  // the wheel zooms, and dragging scrolls
+            final double notches = (ev.getMultiplierY() > 0) ? ev.getDeltaY() / ev.getMultiplierY() : Math.signum(ev.getDeltaY());
+            final Point2D p = board.sceneToLocal(ev.getSceneX(), ev.getSceneY());
+            zoomBy(Math.pow(ZOOM_STEP, notches), p.getX(), p.getY());
+        });
         Platform.runLater(this::setupBoard);
     }
     
@@ -235,32 +590,233 @@ public class FXMLController {
         Platform.exit();
     }
     
+    @FXML
+    private void btnHints(ActionEvent e) {
+        setHintsOn(hintsMenuItem.isSelected());
+    }
+    
+    @FXML
+    private void btnHud(ActionEvent e) {
+        setHudOn(hudMenuItem.isSelected());
+    }
+    
+    private void setHudOn(boolean on) {
+        hudMenuItem.setSelected(on);
+        if(on) hud.show(); else hud.hide();
+    }
+    
     @FXML
     private void btnNewGame(ActionEvent e) {
         setupBoard();
     }
     
+    @FXML
+    private void btnEndless(ActionEvent e) {
+        clearBoard();
+        ++boardGeneration;
+        renderer.clear();
+        endlessTrouble = null;
+        endless = new EndlessField(pctBombs, ThreadLocalRandom.current().nextLong(), this::endlessTrouble);
+        endlessBoard.setField(endless);
+        historySlider.setDisable(true);  // no undo in endless mode
+        updateEndlessStatus();
+    }
+    
+    private void handleEndlessClick(final int x, final int y, final boolean secondary) {
+        if(endless == null || endless.isOver()) return;
+        if(secondary) {
+            endless.toggleFlag(x, y);
+        } else if(endless.open(x, y) < 0) {
+            board.getStyleClass().add("sploded");
+            endlessBoard.showExplosion(x, y);
+        }
+        endlessBoard.redraw();
+        updateEndlessStatus();
+    }
+    
+    private void updateEndlessStatus() {
+        if(endlessTrouble != null) {
+            setStatusText(endlessTrouble);
+            endlessTrouble = null;
+            return;
+        }
+        setStatusText((endless.isLost() ? "Boom! " : endless.isOver() ? "Stopped: " : "Endless: ") + endless.cellsRevealed() +
+                " cells cleared, " + endless.flagsPlaced() + " flags. " +
+                (endless.hasFrontier() ? "Click an open empty cell to keep clearing." : "Drag to look around."));
+    }
+
+    // the spill files gave the endless field trouble.  It's shown now, and
+    // the status update at the end of the click that caused it leaves it up.
+    private void endlessTrouble(String message) {
+        endlessTrouble = message;
+        setStatusText(message);
+    }
+    
+    private boolean isOver() {
+        return (endless != null) ? endless.isOver() : mineField.isOver();
+    }
+    
+    private FileChooser gameChooser() {
+        final FileChooser fc = new FileChooser();
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Saved Games", "*.mines"));
+        return fc;
+    }
+    
+    @FXML
+    private void btnSave(ActionEvent e) {
+        if(generating || replaying || endless != null) return;
+        final File f = gameChooser().showSaveDialog(board.getScene().getWindow());
+        if(f == null) return;
+        try {
+            SavedGame.write(f.toPath(), mineField, moves);
+            setStatusText("Saved to " + f.getName() + ".");
+        } catch (IOException ex) {
+            setStatusText("Couldn't save: " + ex.getMessage());
+        }
+    }
+    
+    @FXML
+    private void btnLoad(ActionEvent e) {
+        final File f = gameChooser().showOpenDialog(board.getScene().getWindow());
+        if(f == null) return;
+        final SavedGame game;
+        try {
+            game = SavedGame.read(f.toPath());
+        } catch (IOException ex) {
+            setStatusText("Couldn't load: " + ex.getMessage());
+            return;
+        }
+        clearBoard();
+        ++boardGeneration;
+        boardInfo = " (loaded " + f.getName() + ")";
+        installField(game.field(), game.moves());
+        // keep the clock going from the last saved move
+        if(moves.size() > 0) gameStart -= moves.time(moves.size() - 1) * 1_000_000L;
+        if(mineField.getState() == MineField.State.LOST) {
+            board.getStyleClass().add("sploded");
+            boardWrecked = true;
+        }
+    }
+    
+    // plays the current game's moves back, from a fresh copy of its board
+    @FXML
+    private void btnReplay(ActionEvent e) {
+        final MoveLog log = (replaying) ? replayMoves : moves;
+        if(generating || endless != null || log.size() == 0) return;
+        final MineField fresh = mineField.freshCopy();
+        clearBoard();
+        ++boardGeneration;
+        installField(fresh, new MoveLog());
+        replayMoves = log;
+        replayNext = 0;
+        replayClock = 0;
+        replayLast = System.nanoTime();
+        replaying = true;
+        replayTimer.start();
+    }
+    
+    private void replayStep(long now) {
+        replayClock += (now - replayLast) / 1e6 * replaySpeed();
+        replayLast = now;
+        while(replayNext < replayMoves.size() && replayMoves.time(replayNext) <= replayClock) {
+            final int c = replayMoves.cell(replayNext);
+            play(mineField.xOf(c), mineField.yOf(c), replayMoves.isFlag(replayNext), 0);
+            ++replayNext;
+        }
+        if(replayNext == replayMoves.size()) stopReplay();
+    }
+    
+    private void stopReplay() {
+        if(!replaying) return;
+        replayTimer.stop();
+        replaying = false;
+        replayMoves = null;
+    }
+    
+    private double replaySpeed() {
+        final Toggle t = replaySpeed.getSelectedToggle();
+        return (t == null) ? 1.0 : Double.parseDouble((String) t.getUserData());
+    }
+    
+    // The Options dialog is built the first time it's asked for, on the FX
+    // thread, and the same Stage is reused after that.  To make the first
+    // time quicker, its FXML is read in the background once the main window
+    // is up, and the classes it imports are loaded (but not initialized...
+    // that, and building the nodes, is left to the FX thread).
+    private CompletableFuture<byte[]> optionsFxml;
+    private Stage optionsStage;
+    private OptionsScreenController optionsController;
+    private long optionsOpenStart;
+    
+    private static final Pattern FXML_IMPORT = Pattern.compile("<\\?import\\s+([\\w.]+)\\s*\\?>");
+    
+    /** Start reading the Options dialog's FXML, if that hasn't happened yet. */
+    public CompletableFuture<byte[]> preloadOptions() {
+        if(optionsFxml == null) {
+            optionsFxml = CompletableFuture.supplyAsync(() -> {
+                final byte[] fxml;
+                try (InputStream in = getClass().getResourceAsStream("fxml/OptionsScreen.fxml")) {
+                    fxml = in.readAllBytes();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                final ClassLoader loader = getClass().getClassLoader();
+                final Matcher m = FXML_IMPORT.matcher(new String(fxml, StandardCharsets.UTF_8));
+                while(m.find()) {
+                    try {
+                        Class.forName(m.group(1), false, loader);
+                    } catch (ClassNotFoundException ex) {
+                        // FXMLLoader will complain about it properly
+                    }
+                }
+                return fxml;
+            });
+        }
+        return optionsFxml;
+    }
+    
+    private void buildOptionsStage() throws IOException {
+        final byte[] fxml;
+        try {
+            fxml = preloadOptions().join();
+        } catch (CompletionException ex) {
+            if(ex.getCause() instanceof UncheckedIOException uio) throw uio.getCause();
+            throw ex;
+        }
+        // the location is still needed, for the stylesheet it refers to
+        final FXMLLoader loader = new FXMLLoader(getClass().getResource("fxml/OptionsScreen.fxml"));
+        loader.setControllerFactory(type -> new OptionsScreenController());
+        loader.load(new ByteArrayInputStream(fxml));
+        optionsController = loader.getController();
+        optionsStage = new Stage(StageStyle.DECORATED);
+        optionsStage.setTitle("Options");
+        optionsStage.initOwner(board.getScene().getWindow());
+        optionsStage.initModality(Modality.APPLICATION_MODAL);
+        optionsStage.setScene(new Scene(loader.getRoot()));
+        optionsStage.setResizable(false);
+        optionsStage.setOnShown(ev -> {
+            if(MainApp.TIMING) {
+                System.out.printf("options dialog open after %.1f ms%n", (System.nanoTime() - optionsOpenStart) / 1e6);
+            }
+        });
+    }
+    
     @FXML
     private void btnOptions(ActionEvent e) throws IOException {
-        FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("fxml/OptionsScreen.fxml"));
-        Parent root = fxmlLoader.load();
-        OptionsScreenController controller = fxmlLoader.getController();
-        controller.initValues(colTiles, rowTiles, pctBombs);
-        
-        Scene scene = new Scene(root);
-        Stage st = new Stage(StageStyle.DECORATED);
+        optionsOpenStart = System.nanoTime();
+        if(optionsStage == null) buildOptionsStage();
+        final OptionsScreenController controller = optionsController;
+        controller.initValues(colTiles, rowTiles, pctBombs, renderMode, noGuess, safeFirstClick);
         controller.focusOnButton();
-        st.setTitle("Options");
-        st.initOwner(board.getScene().getWindow());
-        st.initModality(Modality.APPLICATION_MODAL);
-        st.setScene(scene);
-        st.sizeToScene();
-        st.setResizable(false);
-        st.showAndWait();
+        optionsStage.sizeToScene();
+        optionsStage.showAndWait();
         if (controller.newGameRequested()) {
             colTiles = controller.getCols();
             rowTiles = controller.getRows();
             pctBombs = controller.getPctBombs();
+            renderMode = controller.getRenderMode();
+            noGuess = controller.getNoGuess();
+            safeFirstClick = controller.getSafeFirstClick();
             setupBoard();
         }
     }
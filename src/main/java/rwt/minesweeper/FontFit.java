@@ -0,0 +1,62 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/**
+ * Picks the font size for a digit so it fits in a cell.  Finding the size
+ * means laying out text over and over, so the answers are cached and
+ * shared by every tile on the board.  Cell sizes are rounded to whole
+ * pixels for the cache key, so a window drag only misses the cache once
+ * per pixel of growth rather than on every event.
+ *
+ * Only meant to be used from the FX thread.
+ *
+ * @author richa
+ */
+final class FontFit {
+
+    // a resize drag can walk through a lot of sizes... don't let the
+    // cache grow without bound.
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final Map<Long, Font> cache = new HashMap<>();
+    private static final Text measure = new Text();
+
+    private FontFit() { }
+
+    /** @return a font that fits the digit into a width x height cell. */
+    static Font fontFor(double width, double height, int digit) {
+        final int qw = (int) Math.round(width);
+        final int qh = (int) Math.round(height);
+        final long key = ((long) qw << 36) | ((long) qh << 4) | (digit & 0xF);
+        Font f = cache.get(key);
+        if (f == null) {
+            if (cache.size() >= MAX_ENTRIES) cache.clear();
+            f = fit(qw, qh, Integer.toString(digit));
+            cache.put(key, f);
+        }
+        return f;
+    }
+
+    // Choose a font size that fits, by guess-and-check
+    private static Font fit(double width, double height, String text) {
+        measure.setText(text);
+        Font f = Font.font(Math.max(height, width) + 4);
+        measure.setFont(f);
+
+        while ( ((measure.getBoundsInLocal().getHeight() >= height) ||
+                 (measure.getBoundsInLocal().getWidth() >= width)) && f.getSize() > 2) {
+            f = Font.font(f.getSize() - 2);
+            measure.setFont(f);
+        }
+        return f;
+    }
+}
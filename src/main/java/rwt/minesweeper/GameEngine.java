@@ -0,0 +1,518 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * Plays the game on a thread of its own, so a click that opens up half of
+ * a huge board never holds up a frame.
+ *
+ * The FX thread sends commands (start a game, open a cell, toggle a flag)
+ * down one lock-free ring, and the engine thread sends back what changed
+ * down another.  Those changes are applied, once per pulse, to a copy of
+ * the MineField that lives on the FX thread, and the copy's listeners hear
+ * about them just as they would have from open() and toggleFlag().  So the
+ * renderers, the hints and the save file all read the copy, and never see
+ * a field that's in the middle of changing.
+ *
+ * Both rings are made of slots that are allocated up front and filled in
+ * place (a reveal is copied into its slot's own RevealResult), so a move
+ * doesn't allocate anything on its way there and back, beyond the
+ * BoardVersion that the history keeps for it.
+ *
+ * The engine also keeps the game's history, for undo and redo: after each
+ * move that changed anything it makes a new BoardVersion, and sends that
+ * back too.  Going to another version is just another command, and the
+ * copy follows along with a restore of its own.
+ *
+ * A command that throws is reported back the same way, as a change of its
+ * own, and the engine carries on with the next one.  The move may have got
+ * part way, so the field is put back to the last version first, and the
+ * copy follows it there.  A click's time comes
+ * along with it, and goes back with the first change it makes, so the FX
+ * side can tell how long a click took to show.
+ *
+ * Everything but the constructor is for the FX thread only.
+ *
+ * @author richa
+ */
+final class GameEngine implements GameListener {
+
+    // Each ring has one producer and one consumer.  A slot belongs to the
+    // producer until the tail moves past it, and then to the consumer until
+    // the head does; the release/acquire on those two counters is what
+    // hands the slot's contents from one thread to the other.
+    private static final int COMMAND_SLOTS = 64;
+    private static final int CHANGE_SLOTS = 256;
+    private final Command[] commands = new Command[COMMAND_SLOTS];
+    private final AtomicLong commandHead = new AtomicLong(), commandTail = new AtomicLong();
+    private final Change[] changes = new Change[CHANGE_SLOTS];
+    private final AtomicLong changeHead = new AtomicLong(), changeTail = new AtomicLong();
+
+    // the most changes applied in one pulse, so a huge reveal gets spread
+    // over a few frames instead of holding one up
+    private static final int CHANGES_PER_PULSE = 64;
+
+    private final Thread worker;
+    private volatile boolean closed;
+
+    // the FX side: the current game, and its copy of the field
+    private int game = 0;
+    private MineField copy;
+    private final Runnable onHistory;
+    private final Runnable onChanges;
+    private final LongConsumer onClickShown;
+    private final Consumer<Throwable> onFailure;
+    private final List<BoardVersion> history = new ArrayList<>();
+    private int position;         // where in the history the player asked to be
+    private BoardVersion shown;   // ... and what the copy shows so far
+    private boolean settled;      // false while the copy is part way through a move
+
+    // set when the pump has been asked for, so a burst of changes only
+    // asks once.
+    private final AtomicBoolean pumpPending = new AtomicBoolean();
+    private final AnimationTimer pump = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain(CHANGES_PER_PULSE);
+        }
+    };
+    private final Runnable startPump = pump::start;
+
+    // the engine side... only the worker touches these
+    private MineField field;
+    private int fieldGame;
+    private boolean minesSent;
+    private BoardVersion version;
+    private long[] touchedMark = new long[1];   // leaves changed by the current move
+    private int[] touched = new int[64];
+    private int touchedCount;
+    private long clickNanos;   // the current command's click, until a change carries it back
+
+    /**
+     * @param onHistory told (on the FX thread) whenever the history or the position in it changes.
+     * @param onChanges told (on the FX thread) after each pulse's worth of changes has been applied.
+     * @param onClickShown told (on the FX thread) the System.nanoTime() of a click, once its first
+     *        change has been applied.
+     * @param onFailure told (on the FX thread) when a command threw, instead of doing what it should.
+     */
+    GameEngine(Runnable onHistory, Runnable onChanges, LongConsumer onClickShown,
+               Consumer<Throwable> onFailure) {
+        this.onHistory = onHistory;
+        this.onChanges = onChanges;
+        this.onClickShown = onClickShown;
+        this.onFailure = onFailure;
+        for (int i = 0; i < COMMAND_SLOTS; ++i) commands[i] = new Command();
+        for (int i = 0; i < CHANGE_SLOTS; ++i) changes[i] = new Change();
+        worker = Thread.ofPlatform().name("minesweeper-engine").daemon().start(this::work);
+    }
+
+    /**
+     * Hand a field over to the engine thread, which owns it from now on.
+     * Changes from any earlier game are dropped, and the history starts
+     * over from the field as it is.
+     *
+     * @param moveCount how many moves are in the game's MoveLog already.
+     * @return the copy of the field that the FX thread should show.
+     */
+    MineField start(MineField mf, int moveCount) {
+        copy = mf.copy();
+        shown = BoardVersion.first(mf, moveCount);
+        history.clear();
+        history.add(shown);
+        position = 0;
+        settled = true;
+        final Command c = nextCommand();
+        if (c != null) {
+            c.set(++game, Command.START, 0, 0, 0, 0);
+            c.field = mf;
+            c.version = shown;
+            post();
+        }
+        onHistory.run();
+        return copy;
+    }
+
+    /**
+     * @param moveCount how many moves are in the MoveLog, counting this one.
+     * @param clickNanos when the player clicked, or 0 if they didn't (a replay, say).
+     */
+    void open(int x, int y, int moveCount, long clickNanos) {
+        final Command c = nextCommand();
+        if (c == null) return;
+        c.set(game, Command.OPEN, x, y, moveCount, clickNanos);
+        post();
+    }
+
+    /**
+     * @param moveCount how many moves are in the MoveLog, counting this one.
+     * @param clickNanos when the player clicked, or 0 if they didn't (a replay, say).
+     */
+    void toggleFlag(int x, int y, int moveCount, long clickNanos) {
+        final Command c = nextCommand();
+        if (c == null) return;
+        c.set(game, Command.FLAG, x, y, moveCount, clickNanos);
+        post();
+    }
+
+    /**
+     * @return the version the copy shows, or null while the copy is part
+     *         way through a move (whose changes can take a few pulses).
+     */
+    BoardVersion settledVersion() { return settled ? shown : null; }
+
+    int historySize() { return history.size(); }
+    int historyPosition() { return position; }
+
+    /** @return how many moves the MoveLog had at that point in the history. */
+    int movesAt(int index) { return history.get(index).moveCount(); }
+
+    /** Take the game back (or forward) to a point in its history. */
+    void goTo(int index) {
+        if (index < 0 || index >= history.size() || index == position) return;
+        position = index;
+        final Command c = nextCommand();
+        if (c == null) return;
+        c.set(game, Command.GOTO, 0, 0, 0, 0);
+        c.version = history.get(index);
+        post();
+        onHistory.run();
+    }
+
+    /**
+     * Stops the engine thread, once it's done with the command it's on.
+     * Nothing more comes back from it, and commands sent after this are
+     * dropped.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+        pump.stop();
+    }
+
+    // the slot for the next command, once the engine has made room for it
+    // (or null, if the engine closed while we waited, or is gone)
+    private Command nextCommand() {
+        if (!worker.isAlive() && !closed) {
+            // it shouldn't die, since work() catches everything, but if it
+            // did, waiting for room would be waiting forever
+            onFailure.accept(new IllegalStateException("the game engine has stopped"));
+            return null;
+        }
+        final long tail = commandTail.get();   // (only this thread moves it)
+        while (tail - commandHead.getAcquire() == COMMAND_SLOTS) {
+            if (closed || !worker.isAlive()) return null;
+            // a whole ring of moves behind... and it could be waiting on
+            // us to make room for its changes, so keep those moving.
+            LockSupport.unpark(worker);
+            if (drain(CHANGE_SLOTS) == 0) Thread.onSpinWait();
+        }
+        return commands[(int) tail & (COMMAND_SLOTS - 1)];
+    }
+
+    private void post() {
+        commandTail.setRelease(commandTail.get() + 1);
+        LockSupport.unpark(worker);
+    }
+
+    // ------------------------------------------------------------------
+    // the engine thread
+
+    private void work() {
+        try {
+            while (!closed) {
+                final long head = commandHead.get();
+                if (head == commandTail.getAcquire()) {
+                    LockSupport.park(this);  // an unpark() that got here first makes this return at once
+                    continue;
+                }
+                final Command c = commands[(int) head & (COMMAND_SLOTS - 1)];
+                // (the event is only worth making when a recording wants it)
+                final JfrEvents.Click ev = (c.kind == Command.OPEN || c.kind == Command.FLAG)
+                        && JfrEvents.CLICKS.isEnabled() ? new JfrEvents.Click() : null;
+                if (ev != null) ev.begin();
+                clickNanos = c.clickNanos;
+                try {
+                    run(c);
+                } catch (Closed ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    // a bad command shouldn't take the engine down with it,
+                    // even with an Error: the FX side would wait forever
+                    // for room in the commands
+                    failed(c, ex);
+                }
+                if (ev != null) {
+                    ev.x = c.x;
+                    ev.y = c.y;
+                    ev.secondary = (c.kind == Command.FLAG);
+                    ev.commit();
+                }
+                c.field = null;
+                c.version = null;
+                commandHead.setRelease(head + 1);
+            }
+        } catch (Closed ex) {
+            // closed while waiting for room for a change
+        }
+    }
+
+    private void failed(Command c, Throwable ex) {
+        // whatever the move had touched isn't going into a version now, so
+        // take the field back to the last one
+        for (int i = 0; i < touchedCount; ++i) MineField.clearBit(touchedMark, touched[i]);
+        touchedCount = 0;
+        BoardVersion back = null;
+        if (field != null && c.game == fieldGame) {
+            try {
+                field.reset(version);
+                back = version;
+            } catch (RuntimeException again) {
+                // then there's no trusting the field, so the game stops here
+                ex.addSuppressed(again);
+                field.removeListener(this);
+                field = null;
+            }
+        }
+        final Change ch = nextChange().set(c.game, Change.FAILED, 0, 0);
+        ch.error = ex;
+        ch.version = back;
+        publish();
+    }
+
+    private void run(Command c) {
+        if (c.kind == Command.START) {
+            if (field != null) field.removeListener(this);
+            field = c.field;
+            fieldGame = c.game;
+            minesSent = field.minesPlaced();
+            version = c.version;
+            touchedMark = new long[(PersistentBits.leafOf(field.cellCount() - 1) >>> 6) + 1];
+            field.addListener(this);
+        } else if (field != null && c.game == fieldGame) {
+            switch (c.kind) {
+                case Command.OPEN -> field.open(c.x, c.y);
+                case Command.FLAG -> field.toggleFlag(c.x, c.y);
+                default -> {
+                    field.restore(version, c.version);
+                    version = c.version;
+                    nextChange().set(fieldGame, Change.RESTORE, 0, 0).version = version;
+                    publish();
+                }
+            }
+            if (touchedCount > 0) {
+                version = version.next(field, touched, touchedCount, c.moveCount);
+                for (int i = 0; i < touchedCount; ++i) MineField.clearBit(touchedMark, touched[i]);
+                touchedCount = 0;
+                nextChange().set(fieldGame, Change.VERSION, 0, 0).version = version;
+                publish();
+            }
+        }
+    }
+
+    private void touch(int cell) {
+        final int leaf = PersistentBits.leafOf(cell);
+        if (MineField.getBit(touchedMark, leaf)) return;
+        MineField.setBit(touchedMark, leaf);
+        if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+        touched[touchedCount++] = leaf;
+    }
+
+    // The mines go down on the first open() of a safe-first-click board, and
+    // the copy needs them before anything that was revealed.
+    private void sendMines() {
+        if (minesSent || !field.minesPlaced()) return;
+        minesSent = true;
+        final Change ch = nextChange().set(fieldGame, Change.MINES, 0, 0);
+        ch.mines = field.mineBits().clone();
+        ch.counts = field.countBits().clone();
+        publish();
+    }
+
+    @Override
+    public void cellsRevealed(MineField mf, RevealResult revealed) {
+        sendMines();
+        for (int i = 0; i < revealed.size(); ++i) touch(revealed.cell(i));
+        // the field re-uses its RevealResult on the next batch
+        nextChange().set(fieldGame, Change.REVEAL, 0, 0).revealed.copyFrom(revealed);
+        publish();
+    }
+
+    @Override
+    public void cellFlagged(MineField mf, int x, int y, boolean flagged) {
+        touch(mf.index(x, y));
+        nextChange().set(fieldGame, Change.FLAG, x, y);
+        publish();
+    }
+
+    @Override
+    public void gameLost(MineField mf, int x, int y) {
+        sendMines();
+        touch(mf.index(x, y));
+        nextChange().set(fieldGame, Change.LOSS, x, y);
+        publish();
+    }
+
+    // (the copy works out a win for itself, from its tallies)
+
+    // the slot for the next change, once the FX thread has made room for
+    // it.  The first change of a click carries its time back.
+    private Change nextChange() {
+        final long tail = changeTail.get();   // (only this thread moves it)
+        while (tail - changeHead.getAcquire() == CHANGE_SLOTS) {
+            if (closed) throw new Closed();
+            requestPump();
+            LockSupport.parkNanos(this, 1_000_000L);
+        }
+        final Change ch = changes[(int) tail & (CHANGE_SLOTS - 1)];
+        ch.clickNanos = clickNanos;
+        clickNanos = 0;
+        return ch;
+    }
+
+    private void publish() {
+        changeTail.setRelease(changeTail.get() + 1);
+        requestPump();
+    }
+
+    private void requestPump() {
+        if (pumpPending.compareAndSet(false, true)) Platform.runLater(startPump);
+    }
+
+    // ------------------------------------------------------------------
+    // back on the FX thread, at the next pulse
+
+    // applies up to max changes, and returns how many there were
+    private int drain(int max) {
+        // cleared first, so anything published from here on asks again
+        pumpPending.set(false);
+        long head = changeHead.get();
+        final long tail = changeTail.getAcquire();
+        int applied = 0;
+        for (; head != tail && applied < max; ++head, ++applied) {
+            final Change ch = changes[(int) head & (CHANGE_SLOTS - 1)];
+            if (ch.game == game) {
+                apply(ch);
+                if (ch.clickNanos != 0) onClickShown.accept(ch.clickNanos);
+            }
+            ch.mines = null;
+            ch.counts = null;
+            ch.version = null;
+            ch.error = null;
+            changeHead.setRelease(head + 1);
+        }
+        if (head == tail) pump.stop();
+        if (applied > 0) onChanges.run();
+        return applied;
+    }
+
+    private void apply(Change ch) {
+        settled = (ch.kind == Change.VERSION || ch.kind == Change.RESTORE);
+        switch (ch.kind) {
+            case Change.VERSION -> {
+                // a move after an undo drops the moves that were undone
+                history.subList(ch.version.index(), history.size()).clear();
+                history.add(ch.version);
+                position = ch.version.index();
+                shown = ch.version;
+                onHistory.run();
+            }
+            case Change.RESTORE -> {
+                copy.restore(shown, ch.version);
+                shown = ch.version;
+                position = ch.version.index();
+                onHistory.run();
+            }
+            case Change.MINES -> copy.applyMines(ch.mines, ch.counts);
+            case Change.REVEAL -> copy.applyReveal(ch.revealed);
+            case Change.FLAG -> copy.toggleFlag(ch.x, ch.y);
+            case Change.LOSS -> copy.applyLoss(ch.x, ch.y);
+            default -> {
+                // the engine's field is back at ch.version (if it could be
+                // put back), and the copy may have some of the move already
+                if (ch.version != null) {
+                    copy.reset(ch.version);
+                    shown = ch.version;
+                    position = ch.version.index();
+                    settled = true;
+                    onHistory.run();
+                }
+                onFailure.accept(ch.error);
+            }
+        }
+    }
+
+    // how the engine thread gets out of a wait for room, once closed
+    private static final class Closed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Closed() { super(null, null, false, false); }
+    }
+
+    // a ring slot, filled in by the FX thread
+    private static final class Command {
+        static final int START = 0;
+        static final int OPEN = 1;
+        static final int FLAG = 2;
+        static final int GOTO = 3;
+
+        int game;
+        int kind;
+        int x, y;
+        int moveCount;
+        long clickNanos;
+        MineField field;
+        BoardVersion version;
+
+        void set(int game, int kind, int x, int y, int moveCount, long clickNanos) {
+            this.game = game;
+            this.kind = kind;
+            this.x = x;
+            this.y = y;
+            this.moveCount = moveCount;
+            this.clickNanos = clickNanos;
+        }
+    }
+
+    // a ring slot, filled in by the engine thread
+    private static final class Change {
+        static final int MINES = 0;
+        static final int REVEAL = 1;
+        static final int FLAG = 2;
+        static final int LOSS = 3;
+        static final int VERSION = 4;
+        static final int RESTORE = 5;
+        static final int FAILED = 6;
+
+        int game;
+        int kind;
+        int x, y;
+        long clickNanos;
+        final RevealResult revealed = new RevealResult();
+        long[] mines;
+        byte[] counts;
+        BoardVersion version;
+        Throwable error;
+
+        Change set(int game, int kind, int x, int y) {
+            this.game = game;
+            this.kind = kind;
+            this.x = x;
+            this.y = y;
+            return this;
+        }
+    }
+}
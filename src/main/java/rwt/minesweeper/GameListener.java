@@ -0,0 +1,37 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * Hears about changes to a MineField as they happen, so nobody has to go
+ * scanning the board to find out what changed.  All the methods have empty
+ * defaults; override the ones you care about.
+ *
+ * @author richa
+ */
+public interface GameListener {
+
+    /** Some cells were uncovered by a click. */
+    default void cellsRevealed(MineField mf, RevealResult revealed) { }
+
+    /** A flag was placed on, or removed from, (x,y). */
+    default void cellFlagged(MineField mf, int x, int y, boolean flagged) { }
+
+    /** The last safe cell was uncovered. */
+    default void gameWon(MineField mf) { }
+
+    /** The player uncovered the mine at (x,y). */
+    default void gameLost(MineField mf, int x, int y) { }
+
+    /**
+     * The field jumped to another point in its history (an undo or redo),
+     * and the cells in [from, to) may have changed.  There's one call per
+     * run of changed cells, and then a boardRestored().
+     */
+    default void cellsRestored(MineField mf, int from, int to) { }
+
+    /** The field is done jumping to another point in its history. */
+    default void boardRestored(MineField mf) { }
+}
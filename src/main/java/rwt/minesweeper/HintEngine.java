@@ -0,0 +1,62 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * Runs the Solver in the background for the UI.  Only one request is live
+ * at a time: asking again (or cancelling, when the board changes) makes
+ * the old one give up, and its answer never shows up.
+ *
+ * Call it from the FX thread; answers (or what went wrong) are delivered
+ * there too.
+ *
+ * @author richa
+ */
+final class HintEngine {
+    private final Solver solver = new Solver();
+    private final Consumer<Hints> onHints;
+    private final Consumer<Throwable> onError;
+    private AtomicBoolean current;   // the cancel flag of the live request
+
+    HintEngine(Consumer<Hints> onHints, Consumer<Throwable> onError) {
+        this.onHints = onHints;
+        this.onError = onError;
+    }
+
+    /**
+     * Work out the hints for mf as it was at version v.  Nothing is copied
+     * here: the snapshot is built from the version in the background, along
+     * with the solve.
+     */
+    void request(MineField mf, BoardVersion v) {
+        cancel();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        current = cancelled;
+        CompletableFuture.supplyAsync(() -> solver.solve(v.snapshot(mf), cancelled::get))
+            .whenComplete((hints, ex) -> {
+                if (cancelled.get()) return;   // (which is how a cancelled solve ends, too)
+                Platform.runLater(() -> {
+                    if (cancelled.get()) return;
+                    if (ex == null) {
+                        onHints.accept(hints);
+                    } else {
+                        onError.accept((ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex);
+                    }
+                });
+            });
+    }
+
+    void cancel() {
+        if (current != null) current.set(true);
+        current = null;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * What the Solver figured out about a board: the chance that each hidden
+ * cell holds a mine, and the cells it is sure about.
+ *
+ * @author richa
+ */
+public final class Hints {
+    private final float[] probability;  // -1 for revealed cells
+    private final int[] safeCells;
+    private final int[] mineCells;
+    private final boolean exact;
+
+    Hints(float[] probability, int[] safeCells, int[] mineCells, boolean exact) {
+        this.probability = probability;
+        this.safeCells = safeCells;
+        this.mineCells = mineCells;
+        this.exact = exact;
+    }
+
+    /** @return the chance (cell idx) is a mine, or -1 if it is already revealed. */
+    public float probability(int idx) { return probability[idx]; }
+
+    /** @return the cells that are certainly safe to click. */
+    public int[] safeCells() { return safeCells; }
+
+    /** @return the cells that certainly hold mines. */
+    public int[] mineCells() { return mineCells; }
+
+    /** @return false if some part of the frontier was too big, and had to be sampled. */
+    public boolean isExact() { return exact; }
+
+    /** @return the hidden cell least likely to be a mine, or -1 if there are none. */
+    public int bestGuess() {
+        int best = -1;
+        for (int i = 0; i < probability.length; ++i) {
+            if (probability[i] >= 0 && (best < 0 || probability[i] < probability[best])) best = i;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events for the things that can make the game stutter.
+ * They cost next to nothing unless a recording is running, so they stay on
+ * all the time; record a session with
+ * {@code -XX:StartFlightRecording=filename=mines.jfr} and open it in JMC.
+ *
+ * @author richa
+ */
+final class JfrEvents {
+    private JfrEvents() { }
+
+    // for events common enough that making one costs something, when no
+    // recording wants them
+    static final EventType CLICKS = EventType.getEventType(Click.class);
+
+    @Name("rwt.minesweeper.Click")
+    @Label("Cell Click")
+    @Category("Minesweeper")
+    @Description("The engine thread working out one click on a cell: the reveal or flag, and sending back what changed")
+    static final class Click extends Event {
+        @Label("X") int x;
+        @Label("Y") int y;
+        @Label("Flag") boolean secondary;
+    }
+
+    @Name("rwt.minesweeper.SetupBoard")
+    @Label("Setup Board")
+    @Category("Minesweeper")
+    @Description("Starting a new game, up to when the board is handed to the renderer")
+    static final class SetupBoard extends Event {
+        @Label("Width") int width;
+        @Label("Height") int height;
+        @Label("No Guessing") boolean noGuess;
+    }
+
+    @Name("rwt.minesweeper.Resize")
+    @Label("Resize")
+    @Category("Minesweeper")
+    @Description("Re-laying out the board after the viewport changed size")
+    static final class Resize extends Event {
+        @Label("Viewport Width") double width;
+        @Label("Viewport Height") double height;
+    }
+
+    @Name("rwt.minesweeper.Explosion")
+    @Label("Explosion")
+    @Category("Minesweeper")
+    @Description("Setting up the explosion when the player hits a mine")
+    static final class Explosion extends Event {
+        @Label("X") int x;
+        @Label("Y") int y;
+    }
+}
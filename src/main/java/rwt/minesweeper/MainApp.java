@@ -5,6 +5,11 @@
 
 package rwt.minesweeper;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
@@ -17,19 +22,50 @@ import javafx.stage.Stage;
 
 public class MainApp extends Application {
 
+    // -Dminesweeper.timing=true prints startup and dialog timings, and
+    // -Dminesweeper.exitAfterStartup=true quits once the window is up (that's
+    // how the AppCDS archive and the startup benchmark run the game).
+    static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("minesweeper.exitAfterStartup");
+    static final boolean TIMING = EXIT_AFTER_STARTUP || Boolean.getBoolean("minesweeper.timing");
+
+    private FXMLController controller;
+
     @Override
     public void start(Stage stage) throws Exception {
+        final FXMLController controller = loadScene(stage);
+        this.controller = controller;
+        stage.show();
+        
+        // the first pulse after show() renders the first frame, and anything
+        // run later than that is past it... time to do the non-urgent stuff.
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                Platform.runLater(() -> firstFrame(controller));
+            }
+        }.start();
+    }
+    
+    /**
+     * Loads the game's scene onto the stage, ready to show.  (FrameBench
+     * builds its window this way too, so it times the same scene.)
+     *
+     * @return the scene's controller.
+     */
+    static FXMLController loadScene(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader();
-        fxmlLoader.setLocation(getClass().getResource("fxml/Scene.fxml"));
+        fxmlLoader.setLocation(MainApp.class.getResource("fxml/Scene.fxml"));
+        // build the controller directly, rather than FXMLLoader finding its
+        // constructor reflectively
+        fxmlLoader.setControllerFactory(type -> new FXMLController());
         Parent root = fxmlLoader.load();
         FXMLController controller = fxmlLoader.getController();
         
         Scene scene = new Scene(root, 800, 600, true, SceneAntialiasing.BALANCED);
         //scene.getStylesheets().add("fxml/Styles.css");
 
-        ChangeListener<? super java.lang.Number> cl = (val, ov, nv) -> {
-                Platform.runLater(controller::resize);
-        };
+        ChangeListener<? super java.lang.Number> cl = (val, ov, nv) -> controller.requestResize();
         scene.widthProperty().addListener(cl);
         scene.heightProperty().addListener(cl);                    
 
@@ -43,7 +79,27 @@ public class MainApp extends Application {
         
         stage.setTitle("JavaFX MineSweeper");
         stage.setScene(scene);
-        stage.show();
+        return controller;
+    }
+    
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+    }
+
+    private static void firstFrame(FXMLController controller) {
+        if (TIMING) {
+            final long launched = ProcessHandle.current().info().startInstant()
+                    .map(Instant::toEpochMilli).orElse(-1L);
+            if (launched > 0) {
+                System.out.printf("first frame after %d ms%n", System.currentTimeMillis() - launched);
+            }
+        }
+        final CompletableFuture<?> options = controller.preloadOptions();
+        if (EXIT_AFTER_STARTUP) {
+            // let the dialog's classes finish loading too, so they get archived
+            options.whenComplete((r, ex) -> Platform.runLater(Platform::exit));
+        }
     }
 
     /**
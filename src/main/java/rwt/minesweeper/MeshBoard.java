@@ -0,0 +1,661 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableFloatArray;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * The 3D tiles again, but drawn as a single TriangleMesh instead of a few
+ * nodes per tile.  Every tile is a box of 8 points; the face toward the
+ * player shows the tile's un-revealed state, and the face on the back
+ * shows its digit, so revealing a tile is just turning its box over, as
+ * with the TileBoxes.
+ *
+ * All the looks (hover, flags, hint colors, digits) are cells in one
+ * texture atlas, and a tile changes state by pointing its texture
+ * coordinates at a different cell.  Animations only rewrite the points of
+ * the tiles that are moving.  So however many tiles are showing, Prism
+ * only has one node to draw.
+ *
+ * Like the TileBoard, only the cells in (or near) the viewport are in the
+ * mesh.  Its slots wrap around in both directions, so when the view
+ * scrolls, only the slots that take on a new cell are rewritten, and the
+ * tiles still showing carry on with whatever they were doing.
+ *
+ * @author richa
+ */
+public final class MeshBoard implements BoardRenderer {
+
+    private static final double MIN_CELL_SIZE = 24.0;
+    private static final int MARGIN = 2;
+
+    private static final long FLIP_NANOS = 330_000_000L;
+    private static final long RING_DELAY_NANOS = 40_000_000L;
+    private static final long EXPLODE_NANOS = 100_000_000L;
+    private static final long EXPLODE_DELAY_PER_CELL = 20_000_000L;
+    private static final long SPIN_NANOS = 330_000_000L;
+    private static final int SPIN_CYCLES = 4;
+    private static final double TUMBLE_RADIUS = 12.0;
+
+    // The atlas: 13 un-revealed looks (plain, flagged, and the 11 hint
+    // colors), each with and without hover, then the 9 digits, then the
+    // color of the box sides.
+    private static final int ATLAS_CELL = 64;
+    private static final int ATLAS_COLS = 6;
+    private static final int FLAG_LOOK = 1;
+    private static final int HEAT_LOOK = 2;
+    private static final int DIGIT_CELL = 26;
+    private static final int SIDE_CELL = 35;
+
+    private static final int FLIP = 1;
+    private static final int EXPLODE = 2;
+    private static final int SPIN = 3;
+
+    private final Pane board;
+    private final ScrollPane scroller;
+    private final TriangleMesh mesh = new TriangleMesh();
+    private final MeshView view = new MeshView(mesh);
+    private PhongMaterial material;   // built the first time it's needed
+
+    private MineField mineField;
+    private Hints hints;
+    private double cellWidth, cellHeight;
+    private double zoom = 1.0;   // never below 1, as with the TileBoard
+    private int hovered = -1;
+
+    // the cells in the mesh, [winX, winX+winW) x [winY, winY+winH), and the
+    // ones actually in the viewport.  There are capW x capH slots, enough for
+    // the biggest window the viewport can need, and cell (x, y) goes in slot
+    // (x % capW, y % capH).  Slots with no cell in the window are collapsed.
+    private int winX, winY, winW, winH;
+    private int visX0, visY0, visX1, visY1;
+    private int capW, capH;
+    private int[] slotCell = new int[0];
+    private int[] changed = new int[0];
+
+    // our copies of the mesh arrays: 8 points per slot, and a shared side
+    // texcoord followed by 8 texcoords per slot (4 front, 4 back).  They
+    // only ever grow; the mesh gets the part for capW x capH slots.
+    private float[] points = new float[0];
+    private float[] texCoords = new float[0];
+    private int[] faces = new int[0];
+
+    // per-slot animation state
+    private final SplittableRandom rnd = new SplittableRandom();
+    private int[] kind = new int[0];
+    private long[] startTime = new long[0];
+    private double[] fromDeg = new double[0], dDeg = new double[0];
+    private double[] dX = new double[0], dY = new double[0];
+    private int[] active = new int[64];
+    private int activeCount;
+    private long revealStart;   // when the first batch of the latest reveal came in
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            tick(now);
+        }
+    };
+
+    public MeshBoard(Pane board, ScrollPane scroller, CellClickHandler clickHandler) {
+        this.board = board;
+        this.scroller = scroller;
+        view.setCullFace(CullFace.NONE);  // the depth buffer sorts out which face shows
+        view.setMouseTransparent(true);
+        view.setVisible(false);
+        board.getChildren().add(view);
+
+        scroller.hvalueProperty().addListener((obs, ov, nv) -> refreshWindow(false));
+        scroller.vvalueProperty().addListener((obs, ov, nv) -> refreshWindow(false));
+
+        // hit-testing by position, as in the TileBoard
+        board.addEventHandler(MouseEvent.MOUSE_CLICKED, ev -> {
+            final int idx = cellAt(ev.getX(), ev.getY());
+            if (idx >= 0 && ev.isStillSincePress()) {  // not the end of a drag
+                clickHandler.cellClicked(mineField.xOf(idx), mineField.yOf(idx),
+                        ev.getButton() == MouseButton.SECONDARY);
+            }
+        });
+        board.addEventHandler(MouseEvent.MOUSE_MOVED, ev -> hover(cellAt(ev.getX(), ev.getY())));
+        board.addEventHandler(MouseEvent.MOUSE_EXITED, ev -> hover(-1));
+    }
+
+    @Override
+    public void setField(MineField mf) {
+        if (material == null) {
+            material = new PhongMaterial(Color.WHITE);
+            material.setDiffuseMap(buildAtlas());
+            view.setMaterial(material);
+        }
+        mineField = mf;
+        hints = null;
+        hovered = -1;
+        view.setVisible(true);
+        view.toFront();
+        resize();
+    }
+
+    @Override
+    public void clear() {
+        mineField = null;
+        stopAnimations();
+        view.setVisible(false);
+        mesh.getPoints().clear();
+        mesh.getTexCoords().clear();
+        mesh.getFaces().clear();
+        winW = winH = 0;
+        capW = capH = 0;
+    }
+
+    @Override
+    public void resize() {
+        if (mineField == null) return;
+        final double vw = scroller.getViewportBounds().getWidth();
+        final double vh = scroller.getViewportBounds().getHeight();
+        cellWidth = Math.max(vw / mineField.width(), MIN_CELL_SIZE) * zoom;
+        cellHeight = Math.max(vh / mineField.height(), MIN_CELL_SIZE) * zoom;
+        board.setMinSize(cellWidth * mineField.width(), cellHeight * mineField.height());
+        refreshWindow(true);
+    }
+
+    @Override
+    public double setZoom(double z) {
+        zoom = Math.max(1.0, z);
+        resize();
+        return zoom;
+    }
+
+    @Override
+    public void refreshCell(int x, int y) {
+        final int slot = slotOf(x, y);
+        if (slot < 0) return;
+        bindLook(slot);
+        mesh.getTexCoords().set(texBase(slot), texCoords, texBase(slot), 16);
+        if (kind[slot] == 0) {
+            pose(slot, restAngle(slot), 0, 0);
+            mesh.getPoints().set(slot * 24, points, slot * 24, 24);
+        }
+    }
+
+    @Override
+    public void refreshAll() {
+        if (mineField != null) rebuild();
+    }
+
+    @Override
+    public void showHints(Hints h) {
+        hints = h;
+        if (mineField == null) return;
+        final int slots = capW * capH;
+        for (int s = 0; s < slots; ++s) {
+            if (slotCell[s] >= 0) bindLook(s);
+        }
+        mesh.getTexCoords().set(0, texCoords, 0, texBase(slots));
+    }
+
+    // Off-screen cells just show up revealed when the window next moves.
+    @Override
+    public void animateReveal(RevealResult revealed) {
+        // a later batch of the same reveal carries on from the first one's rings
+        if (revealed.firstRing() == 0) revealStart = System.nanoTime();
+        for (int ring = 0; ring < revealed.ringCount(); ++ring) {
+            final long start = revealStart + (revealed.firstRing() + ring) * RING_DELAY_NANOS;
+            for (int i = revealed.ringStart(ring); i < revealed.ringEnd(ring); ++i) {
+                final int idx = revealed.cell(i);
+                final int slot = slotOf(mineField.xOf(idx), mineField.yOf(idx));
+                if (slot < 0) continue;
+                if (idx == hovered) {
+                    bindLook(slot);
+                    mesh.getTexCoords().set(texBase(slot), texCoords, texBase(slot), 16);
+                }
+                animate(slot, FLIP, start, 0, 180, 0, 0);
+            }
+        }
+        timer.start();
+    }
+
+    @Override
+    public void animateWin() {
+        final long now = System.nanoTime();
+        for (int y = visY0; y < visY1; ++y) {
+            for (int x = visX0; x < visX1; ++x) {
+                animate(slotOf(x, y), SPIN, now, 0, 180, 0, 0);
+            }
+        }
+        timer.start();
+    }
+
+    // the same motion as the TileAnimator gives the TileBoxes, except that
+    // tiles can only tumble about their own X axis here.
+    @Override
+    public void animateExplosion(int bx, int by) {
+        final long now = System.nanoTime();
+        for (int y = visY0; y < visY1; ++y) {
+            for (int x = visX0; x < visX1; ++x) {
+                final int dx = x - bx;
+                final int dy = y - by;
+                final double dist = Math.sqrt(dx*dx + dy*dy);
+                final double strength = (dist < 0.1) ? 2.0 : (1.0/dist);
+                final int slot = slotOf(x, y);
+                animate(slot, EXPLODE, now + (long) (dist * EXPLODE_DELAY_PER_CELL),
+                        restAngle(slot),
+                        (dist < TUMBLE_RADIUS) ? (rnd.nextDouble()-0.5)*90*strength : 0,
+                        rnd.nextDouble()*2.0*strength*cellWidth*Math.signum(dx),
+                        rnd.nextDouble()*2.0*strength*cellHeight*Math.signum(dy));
+            }
+        }
+        timer.start();
+    }
+
+    @Override
+    public int activeAnimations() {
+        return activeCount;
+    }
+
+    // ------------------------------------------------------------------
+    // the window of cells in the mesh
+
+    private int slotOf(int x, int y) {
+        if (x < winX || y < winY || x >= winX + winW || y >= winY + winH) return -1;
+        return (y % capH) * capW + (x % capW);
+    }
+
+    private int cellOf(int slot) {
+        return slotCell[slot];
+    }
+
+    // the cell in the window that belongs in slot s, or -1 if none does
+    private int windowCell(int s) {
+        final int x = winX + Math.floorMod(s % capW - winX, capW);
+        final int y = winY + Math.floorMod(s / capW - winY, capH);
+        return (x < winX + winW && y < winY + winH) ? mineField.index(x, y) : -1;
+    }
+
+    private static int texBase(int slot) { return (1 + slot * 8) * 2; }
+
+    // Works out which cells should be in the mesh.  A new tile size (or a
+    // window too big for the slots) rebuilds the whole mesh, and animations
+    // don't survive that; the tiles just snap to where they'd end up.  A
+    // scroll only moves the slots whose cells left the window.
+    private void refreshWindow(boolean force) {
+        if (mineField == null) return;
+        final double contentW = cellWidth * mineField.width();
+        final double contentH = cellHeight * mineField.height();
+        final double vw = scroller.getViewportBounds().getWidth();
+        final double vh = scroller.getViewportBounds().getHeight();
+        final double left = Math.max(0, contentW - vw) * scroller.getHvalue();
+        final double top = Math.max(0, contentH - vh) * scroller.getVvalue();
+
+        visX0 = (int) (left / cellWidth);
+        visY0 = (int) (top / cellHeight);
+        visX1 = Math.min(mineField.width(), (int) Math.ceil((left + vw) / cellWidth));
+        visY1 = Math.min(mineField.height(), (int) Math.ceil((top + vh) / cellHeight));
+
+        final int nx = Math.max(0, visX0 - MARGIN);
+        final int ny = Math.max(0, visY0 - MARGIN);
+        final int nw = Math.max(0, Math.min(mineField.width(), visX1 + MARGIN) - nx);
+        final int nh = Math.max(0, Math.min(mineField.height(), visY1 + MARGIN) - ny);
+        if (!force && nx == winX && ny == winY && nw == winW && nh == winH) return;
+        winX = nx;
+        winY = ny;
+        winW = nw;
+        winH = nh;
+        if (force || nw > capW || nh > capH) {
+            // room for the most cells the viewport can show, part cells at
+            // both ends included, and the margins
+            capW = Math.max(nw, Math.min(mineField.width(), (int) Math.ceil(vw / cellWidth) + 1 + 2 * MARGIN));
+            capH = Math.max(nh, Math.min(mineField.height(), (int) Math.ceil(vh / cellHeight) + 1 + 2 * MARGIN));
+            rebuild();
+        } else {
+            shift();
+        }
+    }
+
+    private void rebuild() {
+        stopAnimations();
+        final int slots = capW * capH;
+        if (kind.length < slots) {
+            kind = new int[slots];
+            startTime = new long[slots];
+            fromDeg = new double[slots];
+            dDeg = new double[slots];
+            dX = new double[slots];
+            dY = new double[slots];
+            slotCell = new int[slots];
+            changed = new int[slots];
+            points = new float[slots * 24];
+            texCoords = new float[texBase(slots)];
+            faces = new int[slots * 12 * 6];
+
+            // the shared side texcoord: the middle of the side cell
+            texCoords[0] = (ATLAS_UV[SIDE_CELL * 4] + ATLAS_UV[SIDE_CELL * 4 + 2]) * 0.5f;
+            texCoords[1] = (ATLAS_UV[SIDE_CELL * 4 + 1] + ATLAS_UV[SIDE_CELL * 4 + 3]) * 0.5f;
+        }
+
+        for (int s = 0; s < slots; ++s) {
+            slotCell[s] = windowCell(s);
+            place(s);
+            buildFaces(faces, s);
+        }
+        mesh.getPoints().setAll(points, 0, slots * 24);
+        mesh.getTexCoords().setAll(texCoords, 0, texBase(slots));
+        mesh.getFaces().setAll(faces, 0, slots * 12 * 6);
+    }
+
+    // The window moved but still fits the slots: only the slots whose cell
+    // changed are rewritten, and only their tiles stop animating.
+    private void shift() {
+        final int slots = capW * capH;
+        int n = 0;
+        boolean stopped = false;
+        for (int s = 0; s < slots; ++s) {
+            final int cell = windowCell(s);
+            if (cell == slotCell[s]) continue;
+            slotCell[s] = cell;
+            if (kind[s] != 0) {
+                kind[s] = 0;
+                stopped = true;
+            }
+            place(s);
+            changed[n++] = s;
+        }
+        if (stopped) {
+            int live = 0;
+            for (int i = 0; i < activeCount; ++i) {
+                if (kind[active[i]] != 0) active[live++] = active[i];
+            }
+            activeCount = live;
+        }
+
+        final ObservableFloatArray meshPoints = mesh.getPoints();
+        final ObservableFloatArray meshTex = mesh.getTexCoords();
+        if (n > slots / 4) {
+            // most of it moved (a big jump), so send it over in one go
+            meshPoints.set(0, points, 0, slots * 24);
+            meshTex.set(0, texCoords, 0, texBase(slots));
+            return;
+        }
+        for (int i = 0; i < n; ++i) {
+            final int s = changed[i];
+            meshPoints.set(s * 24, points, s * 24, 24);
+            meshTex.set(texBase(s), texCoords, texBase(s), 16);
+        }
+    }
+
+    // the slot's look and its tile at rest, or squashed out of sight if
+    // it has no cell
+    private void place(int s) {
+        if (slotCell[s] < 0) {
+            Arrays.fill(points, s * 24, s * 24 + 24, 0f);
+            return;
+        }
+        bindLook(s);
+        pose(s, restAngle(s), 0, 0);
+    }
+
+    // Twelve triangles per tile.  Points 0-3 are the front face (TL, TR, BR,
+    // BL) and 4-7 the back, in the same order; texcoords 0-3 of the slot
+    // are the front and 4-7 the back.
+    private static final int[][] SIDES = { {0, 1, 5, 4}, {3, 2, 6, 7}, {0, 3, 7, 4}, {1, 2, 6, 5} };
+
+    private static void buildFaces(int[] faces, int s) {
+        final int p = s * 8;
+        final int t = 1 + s * 8;
+        int f = s * 72;
+        f = tri(faces, f, p, t, 0, 1, 2, 0, 1, 2);
+        f = tri(faces, f, p, t, 0, 2, 3, 0, 2, 3);
+        f = tri(faces, f, p, t, 4, 6, 5, 4, 6, 5);
+        f = tri(faces, f, p, t, 4, 7, 6, 4, 7, 6);
+        for (int[] q : SIDES) {
+            f = sideTri(faces, f, p, q[0], q[1], q[2]);
+            f = sideTri(faces, f, p, q[0], q[2], q[3]);
+        }
+    }
+
+    private static int tri(int[] faces, int f, int p, int t, int p0, int p1, int p2, int t0, int t1, int t2) {
+        faces[f++] = p + p0; faces[f++] = t + t0;
+        faces[f++] = p + p1; faces[f++] = t + t1;
+        faces[f++] = p + p2; faces[f++] = t + t2;
+        return f;
+    }
+
+    private static int sideTri(int[] faces, int f, int p, int p0, int p1, int p2) {
+        faces[f++] = p + p0; faces[f++] = 0;
+        faces[f++] = p + p1; faces[f++] = 0;
+        faces[f++] = p + p2; faces[f++] = 0;
+        return f;
+    }
+
+    // Points the slot's texcoords at the atlas cells for its cell's state.
+    private void bindLook(int s) {
+        final int idx = cellOf(s);
+        final int look;
+        if (mineField.isFlagged(idx)) look = FLAG_LOOK;
+        else if (hints != null && hints.probability(idx) >= 0) look = HEAT_LOOK + TileBox.heatIndex(hints.probability(idx));
+        else look = 0;
+        final boolean lit = (idx == hovered) && !mineField.isRevealed(idx);
+        final int f = (look * 2 + (lit ? 1 : 0)) * 4;
+        final int k = (DIGIT_CELL + mineField.countNeighbors(idx)) * 4;
+        final float[] uv = ATLAS_UV;
+
+        final int b = texBase(s);
+        // front: TL, TR, BR, BL
+        put(b, 0, uv[f], uv[f + 1]);
+        put(b, 1, uv[f + 2], uv[f + 1]);
+        put(b, 2, uv[f + 2], uv[f + 3]);
+        put(b, 3, uv[f], uv[f + 3]);
+        // back: upside down, so the digit is the right way up once the
+        // tile has turned over
+        put(b, 4, uv[k], uv[k + 3]);
+        put(b, 5, uv[k + 2], uv[k + 3]);
+        put(b, 6, uv[k + 2], uv[k + 1]);
+        put(b, 7, uv[k], uv[k + 1]);
+    }
+
+    private void put(int base, int corner, float u, float v) {
+        texCoords[base + corner * 2] = u;
+        texCoords[base + corner * 2 + 1] = v;
+    }
+
+    private double restAngle(int s) {
+        return mineField.isRevealed(cellOf(s)) ? 180 : 0;
+    }
+
+    // Places the slot's box, turned deg degrees about its own X axis and
+    // pushed (offX, offY) from where it belongs.
+    private void pose(int s, double deg, double offX, double offY) {
+        final double hw = cellWidth * 0.5 - 0.5;
+        final double hh = cellHeight * 0.5 - 0.5;
+        final double hd = Math.min(cellWidth, cellHeight) * 0.15;
+        final int cell = slotCell[s];
+        final double cx = (mineField.xOf(cell) + 0.5) * cellWidth + offX;
+        final double cy = (mineField.yOf(cell) + 0.5) * cellHeight + offY;
+        final double rad = Math.toRadians(deg);
+        final double cos = Math.cos(rad);
+        final double sin = Math.sin(rad);
+        int p = s * 24;
+        for (int v = 0; v < 8; ++v) {
+            final double lx = (v == 0 || v == 3 || v == 4 || v == 7) ? -hw : hw;
+            final double ly = (v == 0 || v == 1 || v == 4 || v == 5) ? -hh : hh;
+            final double lz = (v < 4) ? -hd : hd;
+            points[p++] = (float) (cx + lx);
+            points[p++] = (float) (cy + ly * cos - lz * sin);
+            points[p++] = (float) (ly * sin + lz * cos);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // animation
+
+    private void animate(int s, int k, long start, double from, double delta, double offX, double offY) {
+        if (kind[s] == 0) {
+            if (activeCount == active.length) active = Arrays.copyOf(active, activeCount * 2);
+            active[activeCount++] = s;
+        }
+        kind[s] = k;
+        startTime[s] = start;
+        fromDeg[s] = from;
+        dDeg[s] = delta;
+        dX[s] = offX;
+        dY[s] = offY;
+    }
+
+    private void tick(long now) {
+        final ObservableFloatArray meshPoints = mesh.getPoints();
+        int live = 0;
+        for (int i = 0; i < activeCount; ++i) {
+            final int s = active[i];
+            final long elapsed = now - startTime[s];
+            if (elapsed < 0) {
+                active[live++] = s;
+                continue;
+            }
+            boolean done;
+            switch (kind[s]) {
+                case FLIP -> {
+                    final double t = Math.min(1.0, elapsed / (double) FLIP_NANOS);
+                    pose(s, fromDeg[s] + dDeg[s] * t, 0, 0);
+                    done = t >= 1.0;
+                }
+                case SPIN -> {
+                    done = elapsed >= SPIN_NANOS * SPIN_CYCLES;
+                    pose(s, done ? 180 : 180.0 * (elapsed % SPIN_NANOS) / SPIN_NANOS, 0, 0);
+                }
+                default -> {
+                    final double t = Math.min(1.0, elapsed / (double) EXPLODE_NANOS);
+                    pose(s, fromDeg[s] + dDeg[s] * t, dX[s] * t, dY[s] * t);
+                    done = t >= 1.0;
+                }
+            }
+            // only this tile's points get sent over
+            meshPoints.set(s * 24, points, s * 24, 24);
+            if (done) {
+                kind[s] = 0;
+            } else {
+                active[live++] = s;
+            }
+        }
+        activeCount = live;
+        if (activeCount == 0) timer.stop();
+    }
+
+    private void stopAnimations() {
+        timer.stop();
+        for (int i = 0; i < activeCount; ++i) kind[active[i]] = 0;
+        activeCount = 0;
+    }
+
+    // ------------------------------------------------------------------
+    // the mouse
+
+    private int cellAt(double px, double py) {
+        if (mineField == null || px < 0 || py < 0) return -1;
+        final int x = (int) (px / cellWidth);
+        final int y = (int) (py / cellHeight);
+        if (x >= mineField.width() || y >= mineField.height()) return -1;
+        return mineField.index(x, y);
+    }
+
+    private void hover(int idx) {
+        if (idx == hovered) return;
+        final int old = hovered;
+        hovered = idx;
+        relook(old);
+        relook(idx);
+    }
+
+    // the cell's look changed (it isn't moving, so its points are fine)
+    private void relook(int cell) {
+        if (cell < 0) return;
+        final int s = slotOf(mineField.xOf(cell), mineField.yOf(cell));
+        if (s < 0) return;
+        bindLook(s);
+        mesh.getTexCoords().set(texBase(s), texCoords, texBase(s), 16);
+    }
+
+    // ------------------------------------------------------------------
+    // the texture atlas
+
+    // (u0, v0, u1, v1) for each atlas cell, half a texel in from the
+    // edges, so neighbors don't bleed in
+    private static final float[] ATLAS_UV = new float[ATLAS_COLS * ATLAS_COLS * 4];
+
+    static {
+        final float size = ATLAS_CELL * ATLAS_COLS;
+        for (int cell = 0; cell < ATLAS_COLS * ATLAS_COLS; ++cell) {
+            final int col = cell % ATLAS_COLS;
+            final int row = cell / ATLAS_COLS;
+            ATLAS_UV[cell * 4] = (col * ATLAS_CELL + 0.5f) / size;
+            ATLAS_UV[cell * 4 + 1] = (row * ATLAS_CELL + 0.5f) / size;
+            ATLAS_UV[cell * 4 + 2] = ((col + 1) * ATLAS_CELL - 0.5f) / size;
+            ATLAS_UV[cell * 4 + 3] = ((row + 1) * ATLAS_CELL - 0.5f) / size;
+        }
+    }
+
+    // drawn with the same colors as the TileBoxes and the CanvasBoard
+    private static Image buildAtlas() {
+        final int size = ATLAS_CELL * ATLAS_COLS;
+        final Canvas c = new Canvas(size, size);
+        final GraphicsContext gc = c.getGraphicsContext2D();
+        final double a = ATLAS_CELL;
+
+        for (int look = 0; look < 13; ++look) {
+            final Color inner = (look == 0) ? CanvasBoard.INNER
+                    : (look == FLAG_LOOK) ? CanvasBoard.FLAG : TileBox.HEAT[look - HEAT_LOOK];
+            for (int lit = 0; lit < 2; ++lit) {
+                final int cell = look * 2 + lit;
+                final double x = (cell % ATLAS_COLS) * a;
+                final double y = (cell / ATLAS_COLS) * a;
+                gc.setFill(lit == 1 ? CanvasBoard.HOVER : CanvasBoard.OUTER);
+                gc.fillRect(x, y, a, a);
+                gc.setFill(inner);
+                gc.fillRect(x + a * 0.1, y + a * 0.1, a * 0.8, a * 0.8);
+            }
+        }
+
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setFont(Font.font(null, FontWeight.BOLD, a * 0.7));
+        for (int n = 0; n <= 8; ++n) {
+            final int cell = DIGIT_CELL + n;
+            final double x = (cell % ATLAS_COLS) * a;
+            final double y = (cell / ATLAS_COLS) * a;
+            gc.setFill(CanvasBoard.OUTER);
+            gc.fillRect(x, y, a, a);
+            if (n > 0) {
+                gc.setFill(TileBox.DIGIT_COLORS[n]);
+                gc.fillText(TileBox.DIGITS[n], x + a * 0.5, y + a * 0.5);
+            }
+        }
+
+        gc.setFill(CanvasBoard.OUTER);
+        gc.fillRect((SIDE_CELL % ATLAS_COLS) * a, (SIDE_CELL / ATLAS_COLS) * a, a, a);
+
+        final SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        return c.snapshot(params, null);
+    }
+}
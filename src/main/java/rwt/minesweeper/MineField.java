@@ -4,67 +4,622 @@
  */
 package rwt.minesweeper;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
+ * The game engine.  All of the state of a game (where the mines are, which
+ * cells have been revealed or flagged) lives here, rather than in the view.
+ *
+ * Cells are addressed by a flat index {@code y * width + x}, so the whole
+ * board lives in three bitsets (one bit per cell each for mines, revealed,
+ * and flagged state) and the neighbor counts, packed two to a byte.  The
+ * counts are built once, when the mines go down, by one pass around each
+ * mine; after that a count is a single load, which the renderers and the
+ * Solver lean on.  That's 7 bits per cell, so a 10,000x10,000 board takes
+ * about 88MB.
+ *
+ * The field also keeps running counts of safe cells left, flags placed and
+ * mines flagged, so win detection and status display are constant-time,
+ * and tells any GameListeners about each change.
  *
  * @author richa
  */
-public class MineField {
-   private final byte[][] field;
+public final class MineField {
+   private final int width;
+   private final int height;
    private final int numberOfMines;
-   
+
+   // one bit per cell...
+   private final long[] mines;
+   private final long[] revealed;
+   private final long[] flagged;
+
+   // two 4-bit neighbor counts per byte (low nibble == even index), and
+   // mines count 0
+   private final byte[] counts;
+
+   public enum State { PLAYING, WON, LOST }
+
+   // running tallies, so nobody has to scan the board
+   private State state = State.PLAYING;
+   private int safeRemaining;
+   private int flagsPlaced;
+   private int minesFlagged;
+
+   private final List<GameListener> listeners = new ArrayList<>();
+
+   // Reused by every reveal, so once they've grown to fit, a click
+   // doesn't allocate anything.  The frontier is a ring buffer holding only
+   // the zero cells still to be expanded, so it's about as big as the edge
+   // of the reveal, and the reveal itself goes out in batches of at most
+   // REVEAL_BATCH cells.  Neither grows with the size of the board.
+   static final int REVEAL_BATCH = 1 << 14;
+   private int[] frontier = new int[64];
+   private int[] batch = new int[64];
+   private int batchSize;
+   private int[] ringStarts = new int[16];
+   private int batchRings;
+   private int batchFirstRing;
+   private final RevealResult lastReveal = new RevealResult();
+
+   // where the mines go is decided entirely by the seed, so a board can
+   // always be rebuilt from (size, density, seed, safe cell).
+   private final long seed;
+   private boolean minesPlaced;
+
    public MineField(final int w, final int h, double pct) {
-       field = new byte[w][h];
-       Random rnd = new Random();
-       numberOfMines = (int)(Math.round(pct * w * h));
-
-       // now place the bombs (-1 == BOMB)       
-       int bombsLeft = numberOfMines;
-       while(bombsLeft > 0) {
-           int xval = rnd.nextInt(w);
-           int yval = rnd.nextInt(h);
-           if(field[xval][yval] == 0) {
-               field[xval][yval] = -1;
-               bombsLeft--;
+       this(w, h, pct, new SplittableRandom().nextLong(), false);
+   }
+
+   /**
+    * Build a field from a seed.  With safeFirstClick, no mines are placed
+    * until the first open(), and then none go in the 3x3 block around it.
+    */
+   public MineField(final int w, final int h, double pct, long seed, boolean safeFirstClick) {
+       this(w, h, pct, seed, safeFirstClick ? SAFE_ZONE : 0);
+       if (!safeFirstClick) placeMines(-1, -1);
+   }
+
+   /**
+    * Build a field from a seed, keeping the 3x3 block around (safeX, safeY)
+    * clear so a first click there opens up.  A negative safeX means no
+    * cell is kept clear.
+    */
+   public MineField(final int w, final int h, double pct, int safeX, int safeY, long seed) {
+       this(w, h, pct, seed, (safeX < 0) ? 0 : safeZone(w, h, safeX, safeY));
+       placeMines(safeX, safeY);
+   }
+
+   private static final int SAFE_ZONE = 9;
+
+   private MineField(final int w, final int h, double pct, long seed, int safeZone) {
+       if (w <= 0 || h <= 0 || ((long)w * h) > Integer.MAX_VALUE) {
+           throw new IllegalArgumentException("bad board size " + w + "x" + h);
+       }
+       width = w;
+       height = h;
+       this.seed = seed;
+       final int cells = w * h;
+       mines = new long[(int)((cells + 63L) >>> 6)];
+       revealed = new long[mines.length];
+       flagged = new long[mines.length];
+       counts = new byte[(int)((cells + 1L) >>> 1)];
+
+       numberOfMines = (int)Math.max(0, Math.min(cells - Math.min(safeZone, cells), Math.round(pct * cells)));
+       safeRemaining = cells - numberOfMines;
+   }
+
+   /**
+    * Rebuild a field from saved state (see SavedGame).  The tallies and
+    * the game state are worked out from the bitsets.
+    */
+   MineField(final int w, final int h, int numberOfMines, long seed, boolean minesPlaced,
+             long[] mines, long[] revealed, long[] flagged) {
+       if (w <= 0 || h <= 0 || ((long)w * h) > Integer.MAX_VALUE) {
+           throw new IllegalArgumentException("bad board size " + w + "x" + h);
+       }
+       final int cells = w * h;
+       final int words = (int)((cells + 63L) >>> 6);
+       if (mines.length != words || revealed.length != words || flagged.length != words) {
+           throw new IllegalArgumentException("bitsets don't match a " + w + "x" + h + " board");
+       }
+       width = w;
+       height = h;
+       this.seed = seed;
+       this.minesPlaced = minesPlaced;
+       this.mines = mines;
+       this.revealed = revealed;
+       this.flagged = flagged;
+       this.counts = neighborCounts(mines, w, h);
+
+       int placed = 0, safeRevealed = 0, minesRevealed = 0;
+       for (int i = 0; i < words; ++i) {
+           placed += Long.bitCount(mines[i]);
+           safeRevealed += Long.bitCount(revealed[i] & ~mines[i]);
+           minesRevealed += Long.bitCount(revealed[i] & mines[i]);
+           flagsPlaced += Long.bitCount(flagged[i]);
+           minesFlagged += Long.bitCount(flagged[i] & mines[i]);
+       }
+       if (minesPlaced ? placed != numberOfMines : placed != 0) {
+           throw new IllegalArgumentException("expected " + numberOfMines + " mines, found " + placed);
+       }
+       // nothing past the last cell, and no flag on an open cell
+       final long tail = (cells & 63) == 0 ? 0 : -1L << (cells & 63);
+       if (((mines[words - 1] | revealed[words - 1] | flagged[words - 1]) & tail) != 0) {
+           throw new IllegalArgumentException("bits set past the end of the board");
+       }
+       for (int i = 0; i < words; ++i) {
+           if ((revealed[i] & flagged[i]) != 0) {
+               throw new IllegalArgumentException("a revealed cell is flagged");
+           }
+       }
+       this.numberOfMines = numberOfMines;
+       safeRemaining = cells - numberOfMines - safeRevealed;
+       if (minesRevealed > 0) state = State.LOST;
+       else if (minesPlaced && safeRemaining == 0) state = State.WON;
+   }
+
+   // an exact copy, minus the listeners
+   private MineField(final MineField other) {
+       width = other.width;
+       height = other.height;
+       numberOfMines = other.numberOfMines;
+       seed = other.seed;
+       minesPlaced = other.minesPlaced;
+       mines = other.mines.clone();
+       revealed = other.revealed.clone();
+       flagged = other.flagged.clone();
+       counts = other.counts.clone();
+       state = other.state;
+       safeRemaining = other.safeRemaining;
+       flagsPlaced = other.flagsPlaced;
+       minesFlagged = other.minesFlagged;
+   }
+
+   /**
+    * @return a copy of this field as it stands, with no listeners.  It's
+    *         all array copies, so it costs about as much as a snapshot().
+    */
+   MineField copy() {
+       return new MineField(this);
+   }
+
+   /** @return the same board as this one, with nothing revealed or flagged yet. */
+   public MineField freshCopy() {
+       // (a copy with the rest wiped, which saves counting the mines again)
+       final MineField fresh = new MineField(this);
+       Arrays.fill(fresh.revealed, 0);
+       Arrays.fill(fresh.flagged, 0);
+       fresh.state = State.PLAYING;
+       fresh.safeRemaining = cellCount() - numberOfMines;
+       fresh.flagsPlaced = 0;
+       fresh.minesFlagged = 0;
+       return fresh;
+   }
+
+   private static int safeZone(int w, int h, int safeX, int safeY) {
+       return (Math.min(safeX+1,w-1) - Math.max(safeX-1,0) + 1) * (Math.min(safeY+1,h-1) - Math.max(safeY-1,0) + 1);
+   }
+
+   /**
+    * Places the mines, keeping the 3x3 block around (safeX, safeY) clear
+    * unless safeX is negative.
+    *
+    * This is Floyd's sampling algorithm: exactly one random draw per mine,
+    * whatever the density, with the mines bitset itself as the "already
+    * picked" set.  Draws are ranks among the cells outside the safe block,
+    * which skipRank turns into cell indices.
+    */
+   private void placeMines(final int safeX, final int safeY) {
+       minesPlaced = true;
+       final SplittableRandom rnd = new SplittableRandom(seed);
+       final int x0, x1, y0, y1;
+       if (safeX < 0) {
+           x0 = 0; x1 = -1; y0 = 0; y1 = -1;  // an empty block
+       } else {
+           x0 = Math.max(safeX-1,0); x1 = Math.min(safeX+1,width-1);
+           y0 = Math.max(safeY-1,0); y1 = Math.min(safeY+1,height-1);
+       }
+       final int allowed = cellCount() - (x1 - x0 + 1) * (y1 - y0 + 1);
+       for (int j = allowed - numberOfMines; j < allowed; ++j) {
+           int idx = skipRank(rnd.nextInt(j + 1), x0, x1, y0, y1);
+           if (getBit(mines, idx)) idx = skipRank(j, x0, x1, y0, y1);
+           setBit(mines, idx);
+       }
+       addCounts(mines, width, height, counts);
+
+       // flags could have gone down before we knew where the mines were
+       minesFlagged = 0;
+       for (int i = 0; i < mines.length; ++i) minesFlagged += Long.bitCount(mines[i] & flagged[i]);
+   }
+
+   // turns a rank among the cells outside the safe block into a cell
+   // index, by stepping over the block's rows in order.
+   private int skipRank(final int rank, final int x0, final int x1, final int y0, final int y1) {
+       int idx = rank;
+       for (int y = y0; y <= y1; ++y) {
+           if (idx >= y * width + x0) idx += x1 - x0 + 1;
+       }
+       return idx;
+   }
+
+   /** @return the neighbor counts for these mines, packed as MineField keeps them. */
+   static byte[] neighborCounts(final long[] mines, final int width, final int height) {
+       final byte[] counts = new byte[(int)(((long) width * height + 1) >>> 1)];
+       addCounts(mines, width, height, counts);
+       return counts;
+   }
+
+   // The incremental pass: each mine adds one to the 3x3 block around it
+   // (itself included), and then the mines are set back to 0.  A nibble
+   // can't overflow, since a safe cell has at most 8 mines around it and a
+   // mine's own count is wiped.  counts starts out all zeroes.  The mines
+   // come in index order, so the row is kept up as we go instead of
+   // dividing for it.
+   private static void addCounts(final long[] mines, final int width, final int height, final byte[] counts) {
+       int cy = 0, rowStart = 0;
+       for (int w = 0; w < mines.length; ++w) {
+           for (long bits = mines[w]; bits != 0; bits &= bits - 1) {
+               final int idx = (w << 6) + Long.numberOfTrailingZeros(bits);
+               while (idx - rowStart >= width) {
+                   rowStart += width;
+                   ++cy;
+               }
+               final int cx = idx - rowStart;
+               final int minx = Math.max(cx-1,0);
+               final int maxx = Math.min(cx+1,width-1);
+               final int top = (cy > 0) ? rowStart - width : rowStart;
+               final int bottom = (cy + 1 < height) ? rowStart + width : rowStart;
+               for (int row = top; row <= bottom; row += width) {
+                   for (int n = row + minx; n <= row + maxx; ++n) {
+                       counts[n >>> 1] += (byte)(1 << ((n & 1) << 2));
+                   }
+               }
            }
        }
-       
-       for(int y = 0; y < h; ++y) {
-           for(int x = 0; x < w; ++x) {
-               field[x][y] = (byte)(slowNeighborCount(x, y));
+       for (int w = 0; w < mines.length; ++w) {
+           for (long bits = mines[w]; bits != 0; bits &= bits - 1) {
+               final int idx = (w << 6) + Long.numberOfTrailingZeros(bits);
+               counts[idx >>> 1] &= (byte) ~(0xF << ((idx & 1) << 2));
            }
        }
-       
    }
-   
+
+   static int countAt(final byte[] counts, final int idx) {
+       return (counts[idx >>> 1] >>> ((idx & 1) << 2)) & 0xF;
+   }
+
+   /** @return the seed the mines were (or will be) placed from. */
+   public long seed() { return seed; }
+
+   /** @return false if the mines are still waiting for the first click. */
+   public boolean minesPlaced() { return minesPlaced; }
+
+   // the live arrays, for SavedGame and GameEngine... not to be modified.
+   long[] mineBits() { return mines; }
+   byte[] countBits() { return counts; }
+   long[] revealedBits() { return revealed; }
+   long[] flaggedBits() { return flagged; }
+
+   public int width() { return width; }
+   public int height() { return height; }
+   public int cellCount() { return width * height; }
+
+   public int index(final int x, final int y) { return y * width + x; }
+   public int xOf(final int idx) { return idx % width; }
+   public int yOf(final int idx) { return idx / width; }
+
    public int howManyMines() {
        return numberOfMines;
    }
-   
+
+   public State getState() { return state; }
+   public boolean isOver() { return state != State.PLAYING; }
+   public int safeCellsRemaining() { return safeRemaining; }
+   public int flagsPlaced() { return flagsPlaced; }
+   public int minesFlagged() { return minesFlagged; }
+
+   /** @return how many mines are left to find, going by the flags placed. */
+   public int minesRemaining() { return numberOfMines - flagsPlaced; }
+
+   /**
+    * @return a copy of what the player can currently see of the board.
+    *         Only the revealed bits are copied: the counts never change
+    *         once the mines are placed, so the snapshot shares them (and
+    *         only lets them out for revealed cells).
+    */
+   public BoardSnapshot snapshot() {
+       return new BoardSnapshot(width, height, numberOfMines, revealed.clone(), counts);
+   }
+
+   /**
+    * @return a snapshot like snapshot(), but copied into bits (as long as
+    *         the bitset) instead of a new array, so it's only good until
+    *         bits gets written again.
+    */
+   BoardSnapshot snapshot(final long[] bits) {
+       System.arraycopy(revealed, 0, bits, 0, revealed.length);
+       return new BoardSnapshot(width, height, numberOfMines, bits, counts);
+   }
+
+   public void addListener(GameListener l) { listeners.add(l); }
+   public void removeListener(GameListener l) { listeners.remove(l); }
+
    public boolean hasBomb(final int x, final int y) {
-        return field[x][y] == ((byte)-1);    
+        return hasBomb(y * width + x);
+   }
+
+   public boolean hasBomb(final int idx) {
+        return getBit(mines, idx);
    }
-   
+
    public int countNeighbors(final int x, final int y) {
-       if(hasBomb(x,y)) return 0;
-       return ((int)field[x][y]);
-   }
-   
-   private int slowNeighborCount(int x, int y) {
-       if(hasBomb(x,y)) return -1;
-       
-       int count = 0;
-       int minx = Math.max(x-1,0);
-       int maxx = Math.min(x+1,field.length-1);
-       int miny = Math.max(y-1,0);
-       int maxy = Math.min(y+1,field[0].length-1);
-       for (y = miny; y <= maxy; ++y) {
-           for (x = minx; x <= maxx; ++x) {
-               count += hasBomb(x, y) ? 1 : 0;
+       return countNeighbors(y * width + x);
+   }
+
+   /** @return the number of mines around a cell, or 0 for a mine. */
+   public int countNeighbors(final int idx) {
+       return countAt(counts, idx);
+   }
+
+   public boolean isRevealed(final int x, final int y) { return isRevealed(y * width + x); }
+   public boolean isRevealed(final int idx) { return getBit(revealed, idx); }
+
+   public boolean isFlagged(final int x, final int y) { return isFlagged(y * width + x); }
+   public boolean isFlagged(final int idx) { return getBit(flagged, idx); }
+
+   /**
+    * The player clicked on (x,y).  Flagged cells are ignored, mines end the
+    * game, and anything else reveals outward from the click.  Listeners
+    * hear about whatever happened.
+    */
+   public void open(final int x, final int y) {
+       if (state != State.PLAYING || isFlagged(x, y)) return;
+       if (!minesPlaced) placeMines(x, y);
+
+       if (hasBomb(x, y)) {
+           explode(x, y);
+       } else {
+           revealFrom(x, y);
+       }
+   }
+
+   private void explode(final int x, final int y) {
+       setBit(revealed, y * width + x);  // so a saved game knows how it ended
+       state = State.LOST;
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).gameLost(this, x, y);
+   }
+
+   // tells the listeners about cells that were just revealed
+   private void announce(final RevealResult result) {
+       if (result.isEmpty()) return;
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).cellsRevealed(this, result);
+   }
+
+   // tells the listeners about the win, once every batch of the move that
+   // won it has gone out (the count reaches zero before the last of them)
+   private void checkWon() {
+       if (state != State.PLAYING || safeRemaining != 0) return;
+       state = State.WON;
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).gameWon(this);
+   }
+
+   // A copy() of a field can be brought up to date with the changes made
+   // to the original, without redoing the work (see GameEngine).  The
+   // listeners on the copy hear about them just as if open() had been
+   // called on it.
+
+   /** Takes the mines (and their counts) placed by the original's first open(). */
+   void applyMines(final long[] placed, final byte[] placedCounts) {
+       System.arraycopy(placed, 0, mines, 0, mines.length);
+       System.arraycopy(placedCounts, 0, counts, 0, counts.length);
+       minesPlaced = true;
+       minesFlagged = 0;
+       for (int i = 0; i < mines.length; ++i) minesFlagged += Long.bitCount(mines[i] & flagged[i]);
+   }
+
+   /** Reveals cells that the original revealed, with no flood fill. */
+   void applyReveal(final RevealResult result) {
+       if (state != State.PLAYING) return;
+       for (int i = 0; i < result.size(); ++i) reveal(result.cell(i));
+       announce(result);
+       checkWon();
+   }
+
+   /** The original's player opened the mine at (x,y). */
+   void applyLoss(final int x, final int y) {
+       if (state == State.PLAYING) explode(x, y);
+   }
+
+   /**
+    * Takes the field from one version of its history to another (see
+    * BoardVersion), writing only the parts of the board that differ between
+    * them.  So undoing a move costs about what the move did, whatever the
+    * size of the board.
+    */
+   void restore(final BoardVersion from, final BoardVersion to) {
+       final long[] touched = new long[(((cellCount() - 1) >>> PersistentBits.LEAF_SHIFT) >>> 6) + 1];
+       to.revealed().writeOver(from.revealed(), revealed, leaf -> setBit(touched, leaf));
+       to.flagged().writeOver(from.flagged(), flagged, leaf -> setBit(touched, leaf));
+       takeTallies(to);
+
+       // runs of changed leaves, as runs of cells
+       final int leaves = ((cellCount() - 1) >>> PersistentBits.LEAF_SHIFT) + 1;
+       for (int leaf = 0; leaf < leaves; ++leaf) {
+           if (!getBit(touched, leaf)) continue;
+           int end = leaf + 1;
+           while (end < leaves && getBit(touched, end)) ++end;
+           final int fromCell = leaf << PersistentBits.LEAF_SHIFT;
+           final int toCell = (int) Math.min(cellCount(), (long) end << PersistentBits.LEAF_SHIFT);
+           for (int i = 0; i < listeners.size(); ++i) listeners.get(i).cellsRestored(this, fromCell, toCell);
+           leaf = end;
+       }
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).boardRestored(this);
+   }
+
+   /**
+    * Puts the whole board back the way it was at a version, whatever it
+    * looks like now... after a move that failed part way, say, when
+    * there's no telling which parts it got to.
+    */
+   void reset(final BoardVersion to) {
+       Arrays.fill(revealed, 0);
+       Arrays.fill(flagged, 0);
+       to.revealed().writeTo(revealed);
+       to.flagged().writeTo(flagged);
+       takeTallies(to);
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).cellsRestored(this, 0, cellCount());
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).boardRestored(this);
+   }
+
+   private void takeTallies(final BoardVersion to) {
+       state = to.state();
+       safeRemaining = to.safeRemaining();
+       flagsPlaced = to.flagsPlaced();
+       minesFlagged = to.minesFlagged();
+       if (minesPlaced && !to.minesPlaced()) {
+           // back before the first click... but the mines stay where they went
+           minesFlagged = 0;
+           for (int i = 0; i < mines.length; ++i) minesFlagged += Long.bitCount(mines[i] & flagged[i]);
+       }
+   }
+
+   // Marks a single cell as revealed (dropping any flag on it), and
+   // returns true if the cell was not already revealed.
+   private boolean reveal(final int idx) {
+       if (getBit(revealed, idx)) return false;
+       setBit(revealed, idx);
+       if (getBit(flagged, idx)) {
+           clearBit(flagged, idx);
+           --flagsPlaced;
+           if (getBit(mines, idx)) --minesFlagged;
+       }
+       if (!getBit(mines, idx)) --safeRemaining;
+       return true;
+   }
+
+   /**
+    * Reveals the cell at (x,y), and flood-fills outward from any cell that
+    * has no neighboring mines.  This is a breadth-first search over a
+    * primitive int ring buffer (no recursion, so huge empty regions can't
+    * blow the stack), and the revealed bitset doubles as the visited set.
+    *
+    * The listeners hear about the newly revealed cells in batches of at
+    * most REVEAL_BATCH, each in rings of increasing distance from the
+    * click, so memory stays bounded however much of the board opens up.
+    *
+    * @return how many cells were revealed.
+    */
+   public int revealFrom(final int x, final int y) {
+       final int origin = y * width + x;
+       if (!reveal(origin)) return 0;
+
+       batchSize = 0;
+       emit(origin, 0);
+       int revealedCount = 1;
+
+       int head = 0, count = 0;
+       if (countAt(counts, origin) == 0) frontier[count++] = origin;
+
+       for (int ring = 1; count > 0; ++ring) {
+           // everything in the frontier now is one step closer than what
+           // it uncovers...
+           for (int left = count; left > 0; --left) {
+               final int idx = frontier[head & (frontier.length - 1)];
+               ++head;
+               --count;
+
+               final int cx = idx % width;
+               final int cy = idx / width;
+               final int minx = Math.max(cx-1,0);
+               final int maxx = Math.min(cx+1,width-1);
+               final int miny = Math.max(cy-1,0);
+               final int maxy = Math.min(cy+1,height-1);
+               for (int ny = miny; ny <= maxy; ++ny) {
+                   for (int nx = minx; nx <= maxx; ++nx) {
+                       final int nidx = ny * width + nx;
+                       if (getBit(revealed, nidx)) continue;
+                       reveal(nidx);
+                       ++revealedCount;
+                       emit(nidx, ring);
+                       if (countAt(counts, nidx) != 0) continue;
+                       if (count == frontier.length) {
+                           frontier = unwrap(frontier, head, count);
+                           head = 0;
+                       }
+                       frontier[(head + count++) & (frontier.length - 1)] = nidx;
+                   }
+               }
            }
        }
-       return count;
+       flush();
+       checkWon();
+       return revealedCount;
+   }
+
+   // the ring buffer's contents in order, in one twice the size
+   private static int[] unwrap(final int[] ring, final int head, final int count) {
+       final int[] bigger = new int[ring.length * 2];
+       final int from = head & (ring.length - 1);
+       final int firstPart = Math.min(count, ring.length - from);
+       System.arraycopy(ring, from, bigger, 0, firstPart);
+       System.arraycopy(ring, 0, bigger, firstPart, count - firstPart);
+       return bigger;
    }
-           
+
+   // adds a revealed cell to the batch, sending the batch on when it's full
+   private void emit(final int idx, final int ring) {
+       if (batchSize == REVEAL_BATCH) flush();
+       if (batchSize == 0) {
+           batchFirstRing = ring;
+           batchRings = 0;
+       }
+       while (batchFirstRing + batchRings <= ring) {
+           if (batchRings == ringStarts.length) ringStarts = Arrays.copyOf(ringStarts, batchRings * 2);
+           ringStarts[batchRings++] = batchSize;
+       }
+       if (batchSize == batch.length) batch = Arrays.copyOf(batch, Math.min(batchSize * 2, REVEAL_BATCH));
+       batch[batchSize++] = idx;
+   }
+
+   private void flush() {
+       if (batchSize == 0) return;
+       lastReveal.set(batch, batchSize, ringStarts, batchRings, batchFirstRing);
+       batchSize = 0;
+       announce(lastReveal);
+   }
+
+   /**
+    * Set or unset a flag on an unrevealed cell.
+    * @return the new flagged state of the cell.
+    */
+   public boolean toggleFlag(final int x, final int y) {
+       final int idx = y * width + x;
+       if (state != State.PLAYING || getBit(revealed, idx)) return getBit(flagged, idx);
+       flagged[idx >>> 6] ^= (1L << idx);
+       final boolean nowFlagged = getBit(flagged, idx);
+       final int delta = nowFlagged ? 1 : -1;
+       flagsPlaced += delta;
+       if (getBit(mines, idx)) minesFlagged += delta;
+       for (int i = 0; i < listeners.size(); ++i) listeners.get(i).cellFlagged(this, x, y, nowFlagged);
+       return nowFlagged;
+   }
+
+   // bitset helpers... java.util.BitSet would work, but it bounds-checks
+   // and grows, and we want these to be as cheap as possible.
+   static boolean getBit(final long[] bits, final int idx) {
+       return (bits[idx >>> 6] & (1L << idx)) != 0;
+   }
+
+   static void setBit(final long[] bits, final int idx) {
+       bits[idx >>> 6] |= (1L << idx);
+   }
+
+   static void clearBit(final long[] bits, final int idx) {
+       bits[idx >>> 6] &= ~(1L << idx);
+   }
+
 }
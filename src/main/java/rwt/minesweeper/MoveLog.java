@@ -0,0 +1,50 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Every click in a game, in order, with when it happened (in milliseconds
+ * from the start of the game).  Moves are only ever added at the end (or
+ * dropped from it, by an undo), and two ints per move is all it takes: the
+ * time, and the cell index, stored as ~idx for a flag toggle.
+ *
+ * @author richa
+ */
+public final class MoveLog {
+    private int[] moves;   // time, cell, time, cell, ...
+    private int size;
+
+    public MoveLog() { this(16); }
+
+    MoveLog(int capacity) { moves = new int[Math.max(2, capacity * 2)]; }
+
+    // takes over the raw (time, cell) pairs SavedGame read
+    MoveLog(int[] pairs) {
+        moves = (pairs.length == 0) ? new int[2] : pairs;
+        size = pairs.length / 2;
+    }
+
+    public void add(int millis, int cell, boolean flag) {
+        if (size * 2 == moves.length) moves = Arrays.copyOf(moves, moves.length * 2);
+        moves[size * 2] = millis;
+        moves[size * 2 + 1] = flag ? ~cell : cell;
+        ++size;
+    }
+
+    /** Drops every move after the first n. */
+    public void truncate(int n) {
+        size = Math.max(0, Math.min(size, n));
+    }
+
+    public int size() { return size; }
+    public int time(int i) { return moves[i * 2]; }
+    public int cell(int i) { final int c = moves[i * 2 + 1]; return (c < 0) ? ~c : c; }
+    public boolean isFlag(int i) { return moves[i * 2 + 1] < 0; }
+
+    // the raw (time, cell) pairs, for SavedGame: the first size()*2 ints
+    int[] rawMoves() { return moves; }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Makes boards that can be won without ever guessing.  Starting from a
+ * first click in the middle of the board, a candidate passes if the Solver
+ * can keep finding certainly-safe cells until every safe cell is open.
+ *
+ * Candidates are built and checked on all but one of the cores at once
+ * (the one left over keeps the FX thread and the engine going), and the
+ * first one to pass wins; the other workers notice and stop.  At high densities a
+ * passing board may be rare (or not exist), so generation gives up after a
+ * time limit and hands back an ordinary board instead.
+ *
+ * That can be a lot of CPU, so by default the generator has a pool of its
+ * own rather than tying up the common one that the hints (and everything
+ * else) share.  The Solver's work runs in the same pool.  generate() waits
+ * for the workers, so it has to be called from outside that pool, or it
+ * would hold one of the pool's threads while they run.
+ *
+ * @author richa
+ */
+public final class NoGuessGenerator {
+
+    /** The board we came up with, and what it cost to find. */
+    public static final class Result {
+        private final MineField field;
+        private final int startX, startY;
+        private final long attempts;
+        private final long nanos;
+        private final boolean noGuess;
+
+        Result(MineField field, int startX, int startY, long attempts, long nanos, boolean noGuess) {
+            this.field = field;
+            this.startX = startX;
+            this.startY = startY;
+            this.attempts = attempts;
+            this.nanos = nanos;
+            this.noGuess = noGuess;
+        }
+
+        public MineField field() { return field; }
+        /** @return where the player should click first, or -1 if that is up to them. */
+        public int startX() { return startX; }
+        public int startY() { return startY; }
+        public long attempts() { return attempts; }
+        public long nanos() { return nanos; }
+        /** @return false if we ran out of time, and this is an ordinary board. */
+        public boolean isNoGuess() { return noGuess; }
+    }
+
+    private final Solver solver;
+    private final Solver alone = new Solver(null);   // for generateAlone()
+    private final ForkJoinPool pool;
+
+    public NoGuessGenerator() {
+        this(new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    public NoGuessGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+        this.solver = new Solver(pool);
+    }
+
+    public Result generate(int w, int h, double pct, long timeLimitNanos) {
+        return generate(w, h, pct, timeLimitNanos, () -> false);
+    }
+
+    /** Like generate, but gives up (with an ordinary board) as soon as cancelled says so. */
+    public Result generate(int w, int h, double pct, long timeLimitNanos, BooleanSupplier cancelled) {
+        if (ForkJoinTask.getPool() == pool) {
+            throw new IllegalStateException("generate() waits on the generator's pool, so it can't run in it");
+        }
+        return find(w, h, pct, timeLimitNanos, cancelled, true);
+    }
+
+    /**
+     * Like generate, but all on the calling thread, solver included: for a
+     * board nobody is waiting for yet, which shouldn't take more than the
+     * one core it's given.
+     */
+    public Result generateAlone(int w, int h, double pct, long timeLimitNanos, BooleanSupplier cancelled) {
+        return find(w, h, pct, timeLimitNanos, cancelled, false);
+    }
+
+    private Result find(int w, int h, double pct, long timeLimitNanos, BooleanSupplier cancelled, boolean parallel) {
+        final int startX = w / 2;
+        final int startY = h / 2;
+        final long start = System.nanoTime();
+        final long deadline = start + timeLimitNanos;
+        final AtomicLong attempts = new AtomicLong();
+        final AtomicLong winner = new AtomicLong(NONE);
+
+        final Runnable worker = () -> {
+            final Solver s = parallel ? solver : alone;
+            final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long[] buffer = null;   // each candidate's snapshots go in here
+            while (winner.get() == NONE && System.nanoTime() < deadline
+                    && !cancelled.getAsBoolean()) {
+                attempts.incrementAndGet();
+                // boards are rebuilt from their seed, so the winner
+                // can be handed back untouched by the check
+                final long seed = rnd.nextLong();
+                final MineField mf = new MineField(w, h, pct, startX, startY, seed);
+                if (buffer == null) buffer = new long[mf.revealedBits().length];
+                if (solvable(s, mf, startX, startY, winner, buffer)) {
+                    winner.compareAndSet(NONE, seed);
+                }
+            }
+        };
+        if (parallel) {
+            pool.invokeAll(Collections.nCopies(pool.getParallelism(), Executors.callable(worker)));
+        } else {
+            worker.run();
+        }
+
+        final long seed = winner.get();
+        final boolean found = (seed != NONE);
+        final MineField field = new MineField(w, h, pct, startX, startY,
+                found ? seed : ThreadLocalRandom.current().nextLong());
+        return new Result(field, startX, startY, attempts.get(), System.nanoTime() - start, found);
+    }
+
+    // 'no winner yet'... a real seed could collide with this, but
+    // then we'd just keep looking a bit longer.
+    private static final long NONE = Long.MIN_VALUE;
+
+    // play the board out using only sure things, giving up early if
+    // someone else already found a board.
+    private static boolean solvable(Solver solver, MineField mf, int startX, int startY, AtomicLong winner, long[] buffer) {
+        mf.open(startX, startY);
+        while (!mf.isOver()) {
+            if (winner.get() != NONE) return false;
+            final Hints hints = solver.deduce(mf.snapshot(buffer));
+            int opened = 0;
+            for (int c : hints.safeCells()) {
+                if (!mf.isRevealed(c)) {
+                    mf.open(mf.xOf(c), mf.yOf(c));
+                    ++opened;
+                }
+            }
+            if (opened == 0) return false;  // we'd have to guess
+        }
+        return mf.getState() == MineField.State.WON;
+    }
+}
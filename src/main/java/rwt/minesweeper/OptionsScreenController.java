@@ -7,6 +7,8 @@ package rwt.minesweeper;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Slider;
 import javafx.stage.Stage;
 
@@ -20,6 +22,8 @@ public class OptionsScreenController {
     private boolean wantsNewGame;  // did the user press "New Game"?
     @FXML private Slider rows, cols, bombs;
     @FXML private Button ngButton;
+    @FXML private ChoiceBox<RenderMode> renderer;
+    @FXML private CheckBox noGuess, safeFirstClick;
     
     /**
      * Initializes the controller class.
@@ -32,6 +36,7 @@ public class OptionsScreenController {
           cols.setValue(Math.round(newVal.doubleValue())));
         bombs.valueProperty().addListener((obs, oldval, newVal) ->
           bombs.setValue(Math.round(newVal.doubleValue())));
+        renderer.getItems().setAll(RenderMode.values());
         wantsNewGame = false;
     }    
 
@@ -44,14 +49,22 @@ public class OptionsScreenController {
         ((Stage)bombs.getScene().getWindow()).close(); // My eyes!  They burn!
     }    
     
-    public void initValues(int nCols, int nRows, double nBombs) {
+    // the dialog gets reused, so this also resets it for another showing
+    public void initValues(int nCols, int nRows, double nBombs, RenderMode mode, boolean nGuess, boolean safeFirst) {
+        wantsNewGame = false;
         rows.setValue(nRows);
         cols.setValue(nCols);
         bombs.setValue(nBombs * 100);
+        renderer.setValue(mode);
+        noGuess.setSelected(nGuess);
+        safeFirstClick.setSelected(safeFirst);
     }
     
     public boolean newGameRequested() { return wantsNewGame; }
     public int getRows() { return (int)(rows.getValue()); }
     public int getCols() { return (int)(cols.getValue()); }
     public double getPctBombs() { return bombs.getValue() / 100.0; }
+    public RenderMode getRenderMode() { return renderer.getValue(); }
+    public boolean getNoGuess() { return noGuess.isSelected(); }
+    public boolean getSafeFirstClick() { return safeFirstClick.isSelected(); }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.function.IntSupplier;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * A little overlay of performance numbers, in the corner of the board:
+ * frames per second, how long each pulse takes, how many nodes are in the
+ * scene, how many animations are going, heap in use, and how long the last
+ * click took to get to the screen (well, to the end of the layout that
+ * comes just before the screen gets drawn).
+ *
+ * The pulse time is measured from this HUD's AnimationTimer (which runs
+ * at the start of the pulse, with the other animations) to the end of
+ * layout, so it covers animation, CSS and layout but not rendering.
+ * The numbers are gathered every frame but only shown twice a second.
+ *
+ * @author richa
+ */
+final class PerfHud {
+
+    private static final long UPDATE_NANOS = 500_000_000L;
+
+    private final StackPane overlays;
+    private final IntSupplier animations;
+    private final Label label = new Label();
+
+    private long windowStart;
+    private int frames;
+    private long pulseStart;
+    private long pulseTotal, pulseMax;
+    private long clickTime = -1;
+    private long lastLatency = -1;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            frame();
+        }
+    };
+
+    private final Runnable pulseEnd = this::pulseEnd;
+
+    PerfHud(StackPane overlays, IntSupplier animations) {
+        this.overlays = overlays;
+        this.animations = animations;
+        label.setFont(Font.font("monospace", 12));
+        label.setTextFill(Color.WHITE);
+        label.setPadding(new Insets(4, 8, 4, 8));
+        label.setBackground(new Background(new BackgroundFill(Color.rgb(0, 0, 0, 0.6), null, null)));
+        label.setMouseTransparent(true);
+        label.setTranslateZ(-60.0);  // in front of the 3D tiles
+        StackPane.setAlignment(label, Pos.TOP_LEFT);
+    }
+
+    private boolean showing;
+
+    boolean isShowing() { return showing; }
+
+    void show() {
+        if (showing) return;
+        showing = true;
+        overlays.getChildren().add(label);
+        final Scene scene = overlays.getScene();
+        if (scene != null) scene.addPostLayoutPulseListener(pulseEnd);
+        windowStart = System.nanoTime();
+        frames = 0;
+        pulseTotal = pulseMax = 0;
+        label.setText("...");
+        timer.start();
+    }
+
+    void hide() {
+        pulseStart = 0;
+        showing = false;
+        timer.stop();
+        overlays.getChildren().remove(label);
+        final Scene scene = overlays.getScene();
+        if (scene != null) scene.removePostLayoutPulseListener(pulseEnd);
+    }
+
+    /** The overlays get cleared for each new game, so put the HUD back if it was up. */
+    void reattach() {
+        if (showing && !overlays.getChildren().contains(label)) overlays.getChildren().add(label);
+    }
+
+    /**
+     * The first change from a click (at clickNanos) has just been applied...
+     * the end of this pulse tells us how long it took to show.
+     */
+    void clickShown(long clickNanos) {
+        if (showing) clickTime = clickNanos;
+    }
+
+    private void frame() {
+        final long now = System.nanoTime();
+        pulseStart = now;
+        ++frames;
+        if (now - windowStart >= UPDATE_NANOS) {
+            update(now);
+            windowStart = now;
+            frames = 0;
+            pulseTotal = pulseMax = 0;
+        }
+    }
+
+    // the click's changes are laid out by now, and about to be rendered
+    private void pulseEnd() {
+        final long now = System.nanoTime();
+        if (clickTime >= 0) {
+            lastLatency = now - clickTime;
+            clickTime = -1;
+        }
+        if (pulseStart == 0) return;
+        final long t = now - pulseStart;
+        pulseTotal += t;
+        if (t > pulseMax) pulseMax = t;
+    }
+
+    private void update(long now) {
+        final double secs = (now - windowStart) / 1e9;
+        final Runtime rt = Runtime.getRuntime();
+        label.setText(String.format(
+                "%5.1f fps   pulse %5.2f ms avg, %5.2f max%n" +
+                "%,d nodes   %d animations%n" +
+                "heap %,d / %,d MB%n" +
+                "click to frame %s",
+                frames / secs,
+                frames == 0 ? 0.0 : pulseTotal / 1e6 / frames, pulseMax / 1e6,
+                countNodes(overlays.getScene() == null ? overlays : overlays.getScene().getRoot()),
+                animations.getAsInt(),
+                (rt.totalMemory() - rt.freeMemory()) >> 20, rt.maxMemory() >> 20,
+                lastLatency < 0 ? "-" : String.format("%.2f ms", lastLatency / 1e6)));
+    }
+
+    static int countNodes(Node n) {
+        int count = 1;
+        if (n instanceof Parent p) {
+            for (Node c : p.getChildrenUnmodifiable()) count += countNodes(c);
+        }
+        return count;
+    }
+}
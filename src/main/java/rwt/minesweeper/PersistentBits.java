@@ -0,0 +1,164 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A copy of one of a MineField's bitsets that never changes once made.
+ * The bits are split into leaves of 4096 cells, under a tree of 32-way
+ * nodes, and a new version only copies the leaves that changed (and the
+ * nodes above them), sharing everything else with the version it came
+ * from.  So keeping every version of a game costs about as much as the
+ * cells that actually changed, whatever the size of the board.
+ *
+ * Two versions can also tell which leaves differ between them without
+ * looking at the rest: a shared subtree is the same object in both.
+ *
+ * @author richa
+ */
+final class PersistentBits {
+
+    static final int LEAF_SHIFT = 12;   // 4096 cells a leaf
+    private static final int LEAF_WORDS = 1 << (LEAF_SHIFT - 6);
+    private static final int FAN_SHIFT = 5;
+    private static final int FAN = 1 << FAN_SHIFT;
+    private static final int MASK = FAN - 1;
+
+    // all the empty leaves are this one
+    private static final long[] ZERO = new long[LEAF_WORDS];
+
+    private final Object[] root;
+    private final int shift;   // the root's children are picked by (leaf >>> shift) & MASK
+    private final int words;   // how long the bitset is
+
+    private PersistentBits(Object[] root, int shift, int words) {
+        this.root = root;
+        this.shift = shift;
+        this.words = words;
+    }
+
+    /** @return the leaf holding a cell. */
+    static int leafOf(int cell) { return cell >>> LEAF_SHIFT; }
+
+    /** @return a copy of the bits, sharing all the empty leaves. */
+    static PersistentBits of(long[] bits) {
+        final int leaves = Math.max(1, (bits.length + LEAF_WORDS - 1) / LEAF_WORDS);
+        int s = 0;
+        while ((long) FAN << s < leaves) s += FAN_SHIFT;
+        final PersistentBits empty = new PersistentBits(emptyNode(s), s, bits.length);
+
+        final int[] nonzero = new int[leaves];
+        int n = 0;
+        for (int leaf = 0; leaf < leaves; ++leaf) {
+            final int from = leaf * LEAF_WORDS;
+            final int to = Math.min(bits.length, from + LEAF_WORDS);
+            for (int w = from; w < to; ++w) {
+                if (bits[w] != 0) {
+                    nonzero[n++] = leaf;
+                    break;
+                }
+            }
+        }
+        return empty.with(bits, nonzero, n);
+    }
+
+    private static Object[] emptyNode(int s) {
+        final Object[] node = new Object[FAN];
+        Arrays.fill(node, (s == 0) ? ZERO : emptyNode(s - FAN_SHIFT));
+        return node;
+    }
+
+    /**
+     * @return a new version, with the given leaves taken from the live
+     *         bitset.  Leaves whose bits didn't actually change stay shared,
+     *         and if none did, this version is returned as it is.  The
+     *         leaves array gets sorted.
+     */
+    PersistentBits with(long[] live, int[] leaves, int count) {
+        if (count == 0) return this;
+        Arrays.sort(leaves, 0, count);
+        final Object[] updated = update(root, shift, leaves, 0, count, live);
+        return (updated == root) ? this : new PersistentBits(updated, shift, words);
+    }
+
+    // leaves[from..to) all belong under node; copy the node, and under it
+    // just the children those leaves are in... unless none of them changed,
+    // when the node itself comes back.
+    private static Object[] update(Object[] node, int s, int[] leaves, int from, int to, long[] live) {
+        Object[] kids = node;
+        int i = from;
+        while (i < to) {
+            final int c = (leaves[i] >>> s) & MASK;
+            int j = i + 1;
+            while (j < to && ((leaves[j] >>> s) & MASK) == c) ++j;
+            final Object kid = (s == 0) ? leafFrom(live, leaves[i], (long[]) node[c])
+                                        : update((Object[]) node[c], s - FAN_SHIFT, leaves, i, j, live);
+            if (kid != node[c]) {
+                if (kids == node) kids = node.clone();
+                kids[c] = kid;
+            }
+            i = j;
+        }
+        return kids;
+    }
+
+    // (the last leaf only holds as many words as the bitset has left)
+    private static long[] leafFrom(long[] live, int leaf, long[] old) {
+        final int from = leaf * LEAF_WORDS;
+        final int len = Math.min(LEAF_WORDS, live.length - from);
+        if (Arrays.equals(live, from, from + len, old, 0, len)) return old;
+        boolean empty = true;
+        for (int w = from; w < from + len && empty; ++w) empty = (live[w] == 0);
+        if (empty) return ZERO;
+        return Arrays.copyOfRange(live, from, from + len);
+    }
+
+    /**
+     * Makes the live bitset match this version, given that it matches
+     * `from` now.  Only the leaves that differ between the two get written,
+     * and each one is passed to changed.
+     */
+    void writeOver(PersistentBits from, long[] live, IntConsumer changed) {
+        if (from.shift != shift || from.words != words) {
+            throw new IllegalArgumentException("versions of different boards");
+        }
+        diff(root, from.root, shift, 0, live, changed);
+    }
+
+    /** Copies this version's bits into bits, which is as long as the bitset. */
+    void writeTo(long[] bits) {
+        writeTo(root, shift, 0, bits);
+    }
+
+    private static void writeTo(Object[] node, int s, int prefix, long[] bits) {
+        for (int c = 0; c < FAN; ++c) {
+            final int leaf = prefix | (c << s);
+            final int at = leaf * LEAF_WORDS;
+            if (at >= bits.length) return;
+            if (s == 0) {
+                if (node[c] != ZERO) System.arraycopy((long[]) node[c], 0, bits, at, Math.min(LEAF_WORDS, bits.length - at));
+            } else {
+                writeTo((Object[]) node[c], s - FAN_SHIFT, leaf, bits);
+            }
+        }
+    }
+
+    private static void diff(Object[] want, Object[] have, int s, int prefix, long[] live, IntConsumer changed) {
+        if (want == have) return;
+        for (int c = 0; c < FAN; ++c) {
+            if (want[c] == have[c]) continue;
+            final int leaf = prefix | (c << s);
+            if (s == 0) {
+                final int at = leaf * LEAF_WORDS;
+                System.arraycopy((long[]) want[c], 0, live, at, Math.min(LEAF_WORDS, live.length - at));
+                changed.accept(leaf);
+            } else {
+                diff((Object[]) want[c], (Object[]) have[c], s - FAN_SHIFT, leaf, live, changed);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * Which BoardRenderer to use.  AUTO picks the 3D tiles for small boards,
+ * the single-mesh 3D tiles for bigger ones, and the 2D canvas once the
+ * board gets huge.
+ *
+ * @author richa
+ */
+public enum RenderMode {
+    AUTO("Automatic"),
+    TILES("3D Tiles"),
+    MESH("3D Mesh"),
+    CANVAS("2D Canvas");
+
+    // in AUTO mode, boards with more cells than these get the mesh or the canvas
+    public static final int MESH_THRESHOLD = 30 * 30;
+    public static final int CANVAS_THRESHOLD = 200 * 200;
+
+    private final String label;
+
+    RenderMode(String label) { this.label = label; }
+
+    /** @return the mode to actually use for a board of this many cells (never AUTO). */
+    public RenderMode resolve(int cells) {
+        if (this != AUTO) return this;
+        if (cells > CANVAS_THRESHOLD) return CANVAS;
+        return (cells > MESH_THRESHOLD) ? MESH : TILES;
+    }
+
+    @Override
+    public String toString() { return label; }
+}
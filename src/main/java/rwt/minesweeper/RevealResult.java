@@ -0,0 +1,65 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+/**
+ * The cells uncovered by a single click, as flat cell indices.  The cells
+ * are in breadth-first order from the click, grouped into "rings": every
+ * cell in ring r is r steps away from the origin.  That's what the UI needs
+ * to ripple the reveal outward.
+ *
+ * A big reveal comes in several batches, one after another, and a batch
+ * after the first picks up at ring firstRing() rather than at the click.
+ *
+ * A MineField re-uses one RevealResult (and its arrays) for every batch,
+ * so a result is only good until the next one from that field.
+ *
+ * @author richa
+ */
+public final class RevealResult {
+    private int[] cells;
+    private int size;
+    private int[] ringStarts;
+    private int rings;
+    private int firstRing;
+
+    RevealResult() {
+        set(new int[0], 0, new int[0], 0, 0);
+    }
+
+    void set(int[] cells, int size, int[] ringStarts, int rings, int firstRing) {
+        this.cells = cells;
+        this.size = size;
+        this.ringStarts = ringStarts;
+        this.rings = rings;
+        this.firstRing = firstRing;
+    }
+
+    /**
+     * Makes this result a copy of another one, that its field won't write
+     * over.  The arrays are only replaced when they're too small, so once
+     * they've grown to fit this doesn't allocate.
+     */
+    void copyFrom(RevealResult r) {
+        if (cells.length < r.size) cells = new int[Math.max(r.size, 2 * cells.length)];
+        if (ringStarts.length < r.rings) ringStarts = new int[Math.max(r.rings, 2 * ringStarts.length)];
+        System.arraycopy(r.cells, 0, cells, 0, r.size);
+        System.arraycopy(r.ringStarts, 0, ringStarts, 0, r.rings);
+        size = r.size;
+        rings = r.rings;
+        firstRing = r.firstRing;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int cell(int i) { return cells[i]; }
+
+    public int ringCount() { return rings; }
+
+    /** @return how far from the click this batch's ring 0 is. */
+    public int firstRing() { return firstRing; }
+    public int ringStart(int ring) { return ringStarts[ring]; }
+    public int ringEnd(int ring) { return (ring + 1 < rings) ? ringStarts[ring + 1] : size; }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Games on disk.  The format is little-endian, and laid out so the big
+ * parts (the bitsets and the move log) go in and out in bulk copies,
+ * through a mapping of the file, rather than a value at a time.  The
+ * field still needs its own arrays to play on, so a load is a copy of
+ * the file, just not a parse of it:
+ *
+ * <pre>
+ *   0   8 bytes   magic "JFXMINES"
+ *   8   u16       version (1)
+ *  10   u16       flags: bit 0 set if the mines have been placed
+ *  12   i32       width
+ *  16   i32       height
+ *  20   i32       number of mines
+ *  24   i64       seed
+ *  32   i32       number of moves
+ *  36   i32       (reserved, 0)
+ *  40   longs     mines bitset, (width*height + 63)/64 of them
+ *       longs     revealed bitset
+ *       longs     flagged bitset
+ *       i32 pairs the move log: (millis, cell), cell is ~idx for a flag
+ * </pre>
+ *
+ * The whole mine layout is stored, not just the seed, so a file still
+ * describes the same board if placement ever changes.
+ *
+ * @author richa
+ */
+public final class SavedGame {
+    private static final byte[] MAGIC = "JFXMINES".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int FLAG_PLACED = 1;
+    private static final int HEADER = 40;
+
+    private final MineField field;
+    private final MoveLog moves;
+
+    private SavedGame(MineField field, MoveLog moves) {
+        this.field = field;
+        this.moves = moves;
+    }
+
+    public MineField field() { return field; }
+    public MoveLog moves() { return moves; }
+
+    public static void write(Path path, MineField mf, MoveLog log) throws IOException {
+        final long[] mines = mf.mineBits();
+        final long size = HEADER + 3L * mines.length * 8 + 8L * log.size();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.put(MAGIC);
+            buf.putShort((short) VERSION);
+            buf.putShort((short) (mf.minesPlaced() ? FLAG_PLACED : 0));
+            buf.putInt(mf.width());
+            buf.putInt(mf.height());
+            buf.putInt(mf.howManyMines());
+            buf.putLong(mf.seed());
+            buf.putInt(log.size());
+            buf.putInt(0);
+            putLongs(buf, mines);
+            putLongs(buf, mf.revealedBits());
+            putLongs(buf, mf.flaggedBits());
+            buf.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(log.rawMoves(), 0, log.size() * 2);
+            buf.force();
+        }
+    }
+
+    public static SavedGame read(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long fileSize = ch.size();
+            if (fileSize < HEADER) throw new IOException("not a saved game (too short)");
+            final MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            final byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC)) throw new IOException("not a saved game");
+            final int version = buf.getShort() & 0xFFFF;
+            if (version != VERSION) throw new IOException("unsupported saved game version " + version);
+            final int flags = buf.getShort() & 0xFFFF;
+            final int w = buf.getInt();
+            final int h = buf.getInt();
+            final int numberOfMines = buf.getInt();
+            final long seed = buf.getLong();
+            final int nMoves = buf.getInt();
+            buf.getInt();
+
+            if (w <= 0 || h <= 0 || (long) w * h > Integer.MAX_VALUE || nMoves < 0) {
+                throw new IOException("corrupt saved game header");
+            }
+            final int words = (int) (((long) w * h + 63) >>> 6);
+            if (fileSize != HEADER + 3L * words * 8 + 8L * nMoves) {
+                throw new IOException("saved game is the wrong size");
+            }
+
+            final long[] mines = getLongs(buf, words);
+            final long[] revealed = getLongs(buf, words);
+            final long[] flagged = getLongs(buf, words);
+            final int[] pairs = new int[nMoves * 2];
+            buf.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pairs);
+            final MoveLog log = new MoveLog(pairs);
+
+            final MineField mf;
+            try {
+                mf = new MineField(w, h, numberOfMines, seed, (flags & FLAG_PLACED) != 0,
+                        mines, revealed, flagged);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("corrupt saved game: " + e.getMessage(), e);
+            }
+            return new SavedGame(mf, log);
+        }
+    }
+
+    // the bitsets go across in bulk, rather than a long at a time
+    private static void putLongs(ByteBuffer buf, long[] bits) {
+        buf.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(bits);
+        buf.position(buf.position() + bits.length * 8);
+    }
+
+    private static long[] getLongs(ByteBuffer buf, int n) {
+        final long[] bits = new long[n];
+        buf.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(bits);
+        buf.position(buf.position() + n * 8);
+        return bits;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+/**
+ * Plays lots of games with no UI at all, straight against MineField, and
+ * reports how fast they went and how often the strategy won.  JavaFX is
+ * never started, so this runs fine on a headless box:
+ *
+ * <pre>
+ *   java -cp ... rwt.minesweeper.Simulate --games 100000 --size 9x9,16x16,30x16 \
+ *        --density 0.12,0.16,0.2 --strategy solver
+ * </pre>
+ *
+ * Games are spread over every core.  Each game's board comes from the base
+ * seed plus the game number, so runs are repeatable.
+ *
+ * @author richa
+ */
+public final class Simulate {
+
+    private int games = 10_000;
+    private final List<int[]> sizes = new ArrayList<>();
+    private final List<Double> densities = new ArrayList<>();
+    private String strategy = "solver";
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1L;
+    private boolean safeFirstClick = true;
+
+    public static void main(String[] args) throws Exception {
+        final Simulate sim = new Simulate();
+        try {
+            sim.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        }
+        sim.run();
+    }
+
+    private static void usage() {
+        System.err.println("usage: Simulate [--games N] [--size WxH[,WxH...]] [--density D[,D...]]");
+        System.err.println("                [--strategy random|solver] [--threads N] [--seed S] [--no-safe-first]");
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; ++i) {
+            final String opt = args[i];
+            if (opt.equals("--no-safe-first")) {
+                safeFirstClick = false;
+                continue;
+            }
+            if (i + 1 == args.length) throw new IllegalArgumentException("missing value for " + opt);
+            final String val = args[++i];
+            try {
+                switch (opt) {
+                    case "--games" -> games = Integer.parseInt(val);
+                    case "--threads" -> threads = Integer.parseInt(val);
+                    case "--seed" -> seed = Long.parseLong(val);
+                    case "--strategy" -> strategy = val;
+                    case "--size" -> {
+                        for (String s : val.split(",")) {
+                            final String[] wh = s.split("x");
+                            if (wh.length != 2) throw new IllegalArgumentException("bad size " + s);
+                            sizes.add(new int[] { Integer.parseInt(wh[0]), Integer.parseInt(wh[1]) });
+                        }
+                    }
+                    case "--density" -> {
+                        for (String d : val.split(",")) densities.add(Double.parseDouble(d));
+                    }
+                    default -> throw new IllegalArgumentException("unknown option " + opt);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad number for " + opt + ": " + val);
+            }
+        }
+        if (!strategy.equals("random") && !strategy.equals("solver")) {
+            throw new IllegalArgumentException("unknown strategy " + strategy);
+        }
+        if (games <= 0 || threads <= 0) throw new IllegalArgumentException("games and threads must be positive");
+        if (sizes.isEmpty()) sizes.add(new int[] { 16, 16 });
+        if (densities.isEmpty()) densities.add(0.15);
+    }
+
+    private void run() throws InterruptedException, ExecutionException {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final Solver solver = new Solver(pool);
+        final LongFunction<Strategy> makeStrategy = strategy.equals("random")
+                ? Strategy::random
+                : s -> Strategy.solver(solver);
+
+        System.out.printf("%d games per board, strategy %s, %d threads%n", games, strategy, threads);
+        System.out.printf("%-11s %7s %10s %8s %10s %10s %10s %10s%n",
+                "board", "density", "games/s", "win %", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        try {
+            for (int[] size : sizes) {
+                for (double density : densities) {
+                    report(size[0], size[1], density, runBatch(pool, makeStrategy, size[0], size[1], density));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // what a batch of games came to
+    private static final class Batch {
+        final long[] nanos;   // per game
+        final int wins;
+        final long wallNanos;
+
+        Batch(long[] nanos, int wins, long wallNanos) {
+            this.nanos = nanos;
+            this.wins = wins;
+            this.wallNanos = wallNanos;
+        }
+    }
+
+    // Plays 'games' games on w x h boards.  Workers grab game numbers in
+    // chunks, so fast and slow games even out across the threads.
+    private Batch runBatch(ForkJoinPool pool, LongFunction<Strategy> makeStrategy,
+                           int w, int h, double density) throws InterruptedException, ExecutionException {
+        final long[] nanos = new long[games];
+        final AtomicInteger next = new AtomicInteger();
+        final int chunk = Math.max(1, Math.min(256, games / (threads * 8)));
+
+        final List<Callable<Integer>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            final long strategySeed = seed * 31 + t;
+            workers.add(() -> {
+                final Strategy player = makeStrategy.apply(strategySeed);
+                int wins = 0;
+                for (int start; (start = next.getAndAdd(chunk)) < games; ) {
+                    final int end = Math.min(start + chunk, games);
+                    for (int g = start; g < end; ++g) {
+                        final long t0 = System.nanoTime();
+                        if (play(player, new MineField(w, h, density, gameSeed(g), safeFirstClick))) ++wins;
+                        nanos[g] = System.nanoTime() - t0;
+                    }
+                }
+                return wins;
+            });
+        }
+
+        final long start = System.nanoTime();
+        int wins = 0;
+        for (Future<Integer> f : pool.invokeAll(workers)) wins += f.get();
+        return new Batch(nanos, wins, System.nanoTime() - start);
+    }
+
+    private long gameSeed(int game) {
+        return new SplittableRandom(seed + game).nextLong();
+    }
+
+    /** @return true if the strategy won. */
+    static boolean play(Strategy player, MineField mf) {
+        player.newGame(mf);
+        while (!mf.isOver()) {
+            final int c = player.nextMove(mf);
+            if (c < 0 || mf.isRevealed(c)) break;  // given up, or stuck
+            mf.open(mf.xOf(c), mf.yOf(c));
+        }
+        return mf.getState() == MineField.State.WON;
+    }
+
+    private void report(int w, int h, double density, Batch b) {
+        final long[] sorted = b.nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-11s %7.3f %10.1f %8.2f %10.3f %10.3f %10.3f %10.3f%n",
+                w + "x" + h, density,
+                games / (b.wallNanos / 1e9),
+                100.0 * b.wins / games,
+                percentile(sorted, 0.50), percentile(sorted, 0.90),
+                percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    // nearest-rank percentile, in milliseconds
+    private static double percentile(long[] sorted, double p) {
+        final int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
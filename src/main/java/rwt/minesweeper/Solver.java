@@ -0,0 +1,518 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Works out what can be known about a board from what the player can see.
+ *
+ * First, the easy deductions: a number whose mines are all accounted for
+ * makes its other neighbors safe, a number with exactly as many hidden
+ * neighbors as mines makes them all mines, and a number whose hidden
+ * neighbors are a subset of another's settles the difference.  Whatever is
+ * left of the frontier (the hidden cells next to numbers) gets split into
+ * components that share no constraints, and each component is solved on
+ * its own, in parallel: exactly, by enumerating every consistent layout,
+ * or by sampling layouts when a component is too big for that.
+ *
+ * @author richa
+ */
+public final class Solver {
+
+    private static final byte UNKNOWN = 0, SAFE = 1, MINE = 2, OPEN = 3;
+
+    // past this many search nodes, a component gets sampled instead
+    private static final long EXACT_NODE_BUDGET = 200_000;
+    private static final int SAMPLES = 300;
+    private static final long SAMPLE_NODE_BUDGET = 5_000;
+
+    private final ForkJoinPool pool;
+
+    public Solver() { this(ForkJoinPool.commonPool()); }
+    /** @param pool where components get solved, or null to solve them one by one on the caller's thread. */
+    public Solver(ForkJoinPool pool) { this.pool = pool; }
+
+    /**
+     * Compute mine probabilities for every hidden cell.
+     * @param cancelled polled while working; when it says true, we give up
+     *                  with a CancellationException.
+     */
+    public Hints solve(BoardSnapshot board, BooleanSupplier cancelled) {
+        return new Work(board, cancelled).run(true);
+    }
+
+    /**
+     * Just the sure things: which cells are certainly safe or mines.  It
+     * makes the same easy deductions and the same exact enumeration of each
+     * frontier component as solve(), so it finds every cell solve() would
+     * call certain; what it saves is the sampling, since a component too
+     * big to enumerate is just left unknown.  The probabilities it returns
+     * are only good for the components that were enumerated.
+     */
+    public Hints deduce(BoardSnapshot board) {
+        return new Work(board, () -> false).run(false);
+    }
+
+    // all the state for one solve...
+    private final class Work {
+        private final BoardSnapshot board;
+        private final BooleanSupplier cancelled;
+        private final int w, h;
+        private final byte[] state;
+
+        Work(BoardSnapshot board, BooleanSupplier cancelled) {
+            this.board = board;
+            this.cancelled = cancelled;
+            w = board.width();
+            h = board.height();
+            state = new byte[board.cellCount()];
+        }
+
+        Hints run(boolean probabilities) {
+            final int cells = board.cellCount();
+            int[] constraints = new int[64];
+            int nConstraints = 0;
+            for (int i = 0; i < cells; ++i) {
+                if (board.isRevealed(i)) {
+                    state[i] = OPEN;
+                    if (board.countNeighbors(i) > 0) {
+                        if (nConstraints == constraints.length) constraints = Arrays.copyOf(constraints, nConstraints * 2);
+                        constraints[nConstraints++] = i;
+                    }
+                }
+            }
+            constraints = Arrays.copyOf(constraints, nConstraints);
+
+            deduceAll(constraints);
+
+            // whatever is still unknown next to a number is the frontier...
+            final int[] varOf = new int[cells];
+            Arrays.fill(varOf, -1);
+            int[] vars = new int[64];
+            int nVars = 0;
+            final int[] nbrs = new int[8];
+            for (int c : constraints) {
+                final int n = unknownNeighbors(c, nbrs);
+                for (int k = 0; k < n; ++k) {
+                    if (varOf[nbrs[k]] < 0) {
+                        if (nVars == vars.length) vars = Arrays.copyOf(vars, nVars * 2);
+                        varOf[nbrs[k]] = nVars;
+                        vars[nVars++] = nbrs[k];
+                    }
+                }
+            }
+
+            // ... split into independent components.
+            final int[] parent = new int[nVars];
+            for (int i = 0; i < nVars; ++i) parent[i] = i;
+            for (int c : constraints) {
+                final int n = unknownNeighbors(c, nbrs);
+                for (int k = 1; k < n; ++k) union(parent, varOf[nbrs[0]], varOf[nbrs[k]]);
+            }
+
+            final List<Component> components = new ArrayList<>();
+            final Component[] byRoot = new Component[nVars];
+            final int[] localOf = new int[nVars];   // each var's position in its component
+            for (int v = 0; v < nVars; ++v) {
+                final int root = find(parent, v);
+                if (byRoot[root] == null) {
+                    byRoot[root] = new Component();
+                    components.add(byRoot[root]);
+                }
+                localOf[v] = byRoot[root].addVar(vars[v]);
+            }
+            for (int c : constraints) {
+                final int n = unknownNeighbors(c, nbrs);
+                if (n == 0) continue;
+                final Component comp = byRoot[find(parent, varOf[nbrs[0]])];
+                for (int k = 0; k < n; ++k) nbrs[k] = localOf[varOf[nbrs[k]]];
+                comp.addConstraint(nbrs, n, board.countNeighbors(c) - knownMines(c));
+            }
+
+            // estimate the mine density in the cells nobody has a number on,
+            // which decides how much to favor layouts with fewer mines.
+            int knownMines = 0, unconstrained = 0;
+            for (int i = 0; i < cells; ++i) {
+                if (state[i] == MINE) ++knownMines;
+                else if (state[i] == UNKNOWN && varOf[i] < 0) ++unconstrained;
+            }
+            final int remaining = board.howManyMines() - knownMines;
+            final double density = clamp(remaining / (double) Math.max(1, nVars + unconstrained), 1e-6, 1 - 1e-6);
+
+            boolean exact = true;
+            if (!components.isEmpty()) {
+                final List<RecursiveAction> tasks = new ArrayList<>(components.size());
+                for (Component comp : components) {
+                    comp.prepare(density, probabilities);
+                    tasks.add(comp);
+                }
+                if (tasks.size() == 1 || pool == null) {
+                    for (RecursiveAction task : tasks) task.invoke();
+                } else if (ForkJoinTask.inForkJoinPool()) {
+                    ForkJoinTask.invokeAll(tasks);   // already on a worker, so fork from here
+                } else {
+                    pool.invoke(new RecursiveAction() {
+                        @Override
+                        protected void compute() { invokeAll(tasks); }
+                    });
+                }
+                checkCancelled();
+                for (Component comp : components) exact &= comp.exact;
+            }
+
+            // gather it all up...
+            final float[] prob = new float[cells];
+            double frontierMines = 0;
+            for (Component comp : components) {
+                for (int k = 0; k < comp.nVars; ++k) {
+                    prob[comp.cells[k]] = (float) comp.prob[k];
+                    frontierMines += comp.prob[k];
+                    if (comp.exact && comp.certainSafe[k]) state[comp.cells[k]] = SAFE;
+                    if (comp.exact && comp.certainMine[k]) state[comp.cells[k]] = MINE;
+                }
+            }
+            final float rest = (float) clamp((remaining - frontierMines) / Math.max(1, unconstrained), 0, 1);
+
+            int nSafe = 0, nMines = 0;
+            for (int i = 0; i < cells; ++i) {
+                switch (state[i]) {
+                    case OPEN: prob[i] = -1; break;
+                    case SAFE: prob[i] = 0; ++nSafe; break;
+                    case MINE: prob[i] = 1; ++nMines; break;
+                    default: if (varOf[i] < 0) prob[i] = rest; break;
+                }
+            }
+            final int[] safe = new int[nSafe];
+            final int[] mines = new int[nMines];
+            nSafe = nMines = 0;
+            for (int i = 0; i < cells; ++i) {
+                if (state[i] == SAFE) safe[nSafe++] = i;
+                else if (state[i] == MINE) mines[nMines++] = i;
+            }
+            return new Hints(prob, safe, mines, exact);
+        }
+
+        // the simple rules, over and over, until they stop finding anything
+        private void deduceAll(int[] constraints) {
+            final int[] a = new int[8], b = new int[8];
+            boolean changed = true;
+            while (changed) {
+                checkCancelled();
+                changed = false;
+                for (int c : constraints) {
+                    final int u = unknownNeighbors(c, a);
+                    if (u == 0) continue;
+                    final int r = board.countNeighbors(c) - knownMines(c);
+                    if (r == 0) changed |= mark(a, u, SAFE);
+                    else if (r == u) changed |= mark(a, u, MINE);
+                }
+                if (changed) continue;
+
+                // the subset rule, against the numbers within reach
+                for (int c : constraints) {
+                    final int ua = unknownNeighbors(c, a);
+                    if (ua == 0) continue;
+                    final int ra = board.countNeighbors(c) - knownMines(c);
+                    final int cx = c % w, cy = c / w;
+                    for (int ny = Math.max(cy-2,0); ny <= Math.min(cy+2,h-1); ++ny) {
+                        for (int nx = Math.max(cx-2,0); nx <= Math.min(cx+2,w-1); ++nx) {
+                            final int d = ny * w + nx;
+                            if (d == c || board.countNeighbors(d) <= 0) continue;
+                            final int ub = unknownNeighbors(d, b);
+                            if (ub <= ua || !contains(b, ub, a, ua)) continue;
+                            final int rd = board.countNeighbors(d) - knownMines(d) - ra;
+                            // b now holds just the difference...
+                            final int diff = subtract(b, ub, a, ua);
+                            if (rd == 0) changed |= mark(b, diff, SAFE);
+                            else if (rd == diff) changed |= mark(b, diff, MINE);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean mark(int[] cells, int n, byte what) {
+            for (int k = 0; k < n; ++k) state[cells[k]] = what;
+            return n > 0;
+        }
+
+        private int unknownNeighbors(int c, int[] out) {
+            final int cx = c % w, cy = c / w;
+            int n = 0;
+            for (int ny = Math.max(cy-1,0); ny <= Math.min(cy+1,h-1); ++ny) {
+                for (int nx = Math.max(cx-1,0); nx <= Math.min(cx+1,w-1); ++nx) {
+                    final int d = ny * w + nx;
+                    if (state[d] == UNKNOWN) out[n++] = d;
+                }
+            }
+            return n;
+        }
+
+        private int knownMines(int c) {
+            final int cx = c % w, cy = c / w;
+            int n = 0;
+            for (int ny = Math.max(cy-1,0); ny <= Math.min(cy+1,h-1); ++ny) {
+                for (int nx = Math.max(cx-1,0); nx <= Math.min(cx+1,w-1); ++nx) {
+                    if (state[ny * w + nx] == MINE) ++n;
+                }
+            }
+            return n;
+        }
+
+        private void checkCancelled() {
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+        }
+
+        // One independent piece of the frontier, solved as a fork-join task.
+        private final class Component extends RecursiveAction {
+            private static final long serialVersionUID = 1L;   // (never serialized)
+
+            int[] cells = new int[8];
+            int nVars;
+
+            // constraints, as (target, count, vars...) runs of local var ids
+            int[] cons = new int[32];
+            int consLen;
+
+            double[] prob;
+            boolean[] certainSafe, certainMine;
+            boolean exact = true;
+
+            private int[][] varCons;   // the constraints (by offset) each var is in
+            private double ratio, logRatio;
+            private boolean probabilities;
+
+            int addVar(int cell) {
+                if (nVars == cells.length) cells = Arrays.copyOf(cells, nVars * 2);
+                cells[nVars] = cell;
+                return nVars++;
+            }
+
+            void addConstraint(int[] nbrs, int n, int target) {
+                if (consLen + n + 2 > cons.length) cons = Arrays.copyOf(cons, (consLen + n + 2) * 2);
+                cons[consLen++] = target;
+                cons[consLen++] = n;
+                for (int k = 0; k < n; ++k) cons[consLen++] = nbrs[k];
+            }
+
+            void prepare(double density, boolean probabilities) {
+                this.ratio = density / (1 - density);
+                this.logRatio = Math.log(ratio);
+                this.probabilities = probabilities;
+                final int[] degree = new int[nVars];
+                for (int off = 0; off < consLen; off += 2 + cons[off + 1]) {
+                    for (int k = 0; k < cons[off + 1]; ++k) ++degree[cons[off + 2 + k]];
+                }
+                varCons = new int[nVars][];
+                for (int v = 0; v < nVars; ++v) varCons[v] = new int[degree[v]];
+                Arrays.fill(degree, 0);
+                for (int off = 0; off < consLen; off += 2 + cons[off + 1]) {
+                    for (int k = 0; k < cons[off + 1]; ++k) {
+                        final int v = cons[off + 2 + k];
+                        varCons[v][degree[v]++] = off;
+                    }
+                }
+            }
+
+            @Override
+            protected void compute() {
+                prob = new double[nVars];
+                certainSafe = new boolean[nVars];
+                certainMine = new boolean[nVars];
+                try {
+                    enumerate();
+                } catch (BudgetExceeded e) {
+                    exact = false;
+                    if (probabilities) sample();
+                }
+            }
+
+            // per-constraint running totals during the search
+            private int[] consMines, consOpen;
+            private byte[] value;
+            private long nodes, nodeBudget;
+            private double[] mineWeight;
+            private long[] mineCount;
+            private double totalWeight;
+            private long totalCount;
+            private int heaviest;   // the mine count the weights are relative to
+
+            private void setup(long budget) {
+                consMines = new int[consLen];
+                consOpen = new int[consLen];
+                for (int off = 0; off < consLen; off += 2 + cons[off + 1]) consOpen[off] = cons[off + 1];
+                value = new byte[nVars];
+                nodes = 0;
+                nodeBudget = budget;
+            }
+
+            private void enumerate() {
+                setup(EXACT_NODE_BUDGET);
+                mineWeight = new double[nVars];
+                mineCount = new long[nVars];
+                totalWeight = 0;
+                totalCount = 0;
+                search(0, 0, null);
+                for (int k = 0; k < nVars; ++k) {
+                    prob[k] = totalWeight > 0 ? mineWeight[k] / totalWeight : 0;
+                    certainSafe[k] = totalCount > 0 && mineCount[k] == 0;
+                    certainMine[k] = totalCount > 0 && mineCount[k] == totalCount;
+                }
+            }
+
+            // find layouts by random depth-first dives, and average them
+            private void sample() {
+                final SplittableRandom rnd = new SplittableRandom(cells[0]);
+                final double density = ratio / (1 + ratio);
+                final long[] hits = new long[nVars];
+                int found = 0;
+                for (int s = 0; s < SAMPLES; ++s) {
+                    setup(SAMPLE_NODE_BUDGET);
+                    try {
+                        if (search(0, 0, rnd.split()) ) {
+                            ++found;
+                            for (int k = 0; k < nVars; ++k) hits[k] += value[k];
+                        }
+                    } catch (BudgetExceeded e) {
+                        // just a dud sample
+                    }
+                    if ((s & 15) == 0) checkCancelled();
+                }
+                for (int k = 0; k < nVars; ++k) {
+                    prob[k] = found > 0 ? hits[k] / (double) found : density;
+                }
+            }
+
+            // Assign var v onward.  With no rnd, this visits every layout and
+            // tallies them; with rnd, it stops at the first one it finds.
+            private boolean search(int v, int mines, SplittableRandom rnd) {
+                if (++nodes > nodeBudget) throw BudgetExceeded.INSTANCE;
+                if ((nodes & 4095) == 0) checkCancelled();
+                if (v == nVars) {
+                    if (rnd == null) tally(mines);
+                    return true;
+                }
+                final double density = ratio / (1 + ratio);
+                final byte first = (rnd != null && rnd.nextDouble() < density) ? (byte) 1 : (byte) 0;
+                for (int t = 0; t < 2; ++t) {
+                    final byte val = (byte) (t == 0 ? first : 1 - first);
+                    if (assign(v, val)) {
+                        final boolean done = search(v + 1, mines + val, rnd);
+                        unassign(v, val);
+                        if (done && rnd != null) {
+                            value[v] = val;
+                            return true;
+                        }
+                    } else {
+                        unassign(v, val);
+                    }
+                }
+                return false;
+            }
+
+            // A layout's weight is ratio^mines, but on a big component that
+            // underflows to zero (or overflows, on a dense board), and then
+            // every probability comes out 0.  So the weights are kept
+            // relative to the heaviest layout found so far, and the sums are
+            // scaled down whenever a heavier one turns up.
+            private void tally(int mines) {
+                if (totalCount == 0) {
+                    heaviest = mines;
+                } else if (mines != heaviest && (mines - heaviest) * logRatio > 0) {
+                    final double scale = Math.exp((heaviest - mines) * logRatio);
+                    totalWeight *= scale;
+                    for (int k = 0; k < nVars; ++k) mineWeight[k] *= scale;
+                    heaviest = mines;
+                }
+                final double wt = (mines == heaviest) ? 1 : Math.exp((mines - heaviest) * logRatio);
+                totalWeight += wt;
+                ++totalCount;
+                for (int k = 0; k < nVars; ++k) {
+                    if (value[k] != 0) {
+                        mineWeight[k] += wt;
+                        ++mineCount[k];
+                    }
+                }
+            }
+
+            // returns false if this breaks a constraint (the caller still unassigns)
+            private boolean assign(int v, byte val) {
+                value[v] = val;
+                boolean ok = true;
+                for (int off : varCons[v]) {
+                    consMines[off] += val;
+                    --consOpen[off];
+                    final int target = cons[off];
+                    if (consMines[off] > target || consMines[off] + consOpen[off] < target) ok = false;
+                }
+                return ok;
+            }
+
+            private void unassign(int v, byte val) {
+                for (int off : varCons[v]) {
+                    consMines[off] -= val;
+                    ++consOpen[off];
+                }
+                value[v] = 0;
+            }
+        }
+    }
+
+    private static final class BudgetExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final BudgetExceeded INSTANCE = new BudgetExceeded();
+        private BudgetExceeded() { super(null, null, false, false); }
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    // is every element of small[0..ns) in big[0..nb)?
+    private static boolean contains(int[] big, int nb, int[] small, int ns) {
+        outer:
+        for (int i = 0; i < ns; ++i) {
+            for (int j = 0; j < nb; ++j) {
+                if (big[j] == small[i]) continue outer;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    // remove small's elements from big, in place; returns big's new length
+    private static int subtract(int[] big, int nb, int[] small, int ns) {
+        int n = 0;
+        outer:
+        for (int j = 0; j < nb; ++j) {
+            for (int i = 0; i < ns; ++i) {
+                if (big[j] == small[i]) continue outer;
+            }
+            big[n++] = big[j];
+        }
+        return n;
+    }
+
+    private static double clamp(double v, double lo, double hi) {
+        return v < lo ? lo : (v > hi ? hi : v);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.SplittableRandom;
+
+/**
+ * A way of playing a MineField without a person at the controls, for the
+ * headless Simulate runner.  A strategy only ever opens cells; it is told
+ * when a new game starts, then asked for moves until the game is over.
+ *
+ * Strategies keep per-game state, so each thread needs its own.
+ *
+ * @author richa
+ */
+public interface Strategy {
+
+    /** A new game is starting on mf. */
+    void newGame(MineField mf);
+
+    /** @return the next cell (a flat index) to open, or -1 to give up. */
+    int nextMove(MineField mf);
+
+    /** Opens hidden cells in a random order. */
+    static Strategy random(long seed) { return new RandomStrategy(seed); }
+
+    /**
+     * Opens cells the Solver is sure about, and when there aren't any, the
+     * one it thinks is least likely to be a mine.
+     */
+    static Strategy solver(Solver solver) { return new SolverStrategy(solver); }
+
+    final class RandomStrategy implements Strategy {
+        private final SplittableRandom rnd;
+        private int[] order = new int[0];
+        private int cursor;
+
+        RandomStrategy(long seed) { rnd = new SplittableRandom(seed); }
+
+        // a shuffled list of every cell, so picking a hidden cell doesn't
+        // mean scanning the board.
+        @Override
+        public void newGame(MineField mf) {
+            final int n = mf.cellCount();
+            if (order.length != n) {
+                order = new int[n];
+                for (int i = 0; i < n; ++i) order[i] = i;
+            }
+            for (int i = n - 1; i > 0; --i) {
+                final int j = rnd.nextInt(i + 1);
+                final int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            cursor = 0;
+        }
+
+        @Override
+        public int nextMove(MineField mf) {
+            while (cursor < order.length && mf.isRevealed(order[cursor])) ++cursor;
+            return (cursor < order.length) ? order[cursor++] : -1;
+        }
+    }
+
+    final class SolverStrategy implements Strategy {
+        private final Solver solver;
+        private int[] safe = new int[0];
+        private int cursor;
+        private boolean firstMove;
+
+        SolverStrategy(Solver solver) { this.solver = solver; }
+
+        @Override
+        public void newGame(MineField mf) {
+            safe = new int[0];
+            cursor = 0;
+            firstMove = true;
+        }
+
+        @Override
+        public int nextMove(MineField mf) {
+            if (firstMove) {
+                firstMove = false;
+                return mf.index(mf.width() / 2, mf.height() / 2);
+            }
+
+            // sure things left over from the last time we asked?
+            while (cursor < safe.length && mf.isRevealed(safe[cursor])) ++cursor;
+            if (cursor < safe.length) return safe[cursor++];
+
+            final BoardSnapshot board = mf.snapshot();
+            final Hints sure = solver.deduce(board);
+            safe = sure.safeCells();
+            cursor = 0;
+            while (cursor < safe.length && mf.isRevealed(safe[cursor])) ++cursor;
+            if (cursor < safe.length) return safe[cursor++];
+
+            // nothing certain... time to guess, as well as we can.
+            return solver.solve(board, () -> false).bestGuess();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * How much of each block of the board has been revealed or flagged, at
+ * every power-of-two block size, for drawing a board zoomed out too far
+ * to show single cells.  Level k is made of 2^k x 2^k blocks of cells, so
+ * whatever the zoom, a screenful of blocks can be had from one level
+ * without touching more cells than there are blocks on the screen.
+ *
+ * Levels from BASE up are kept in arrays, and kept current by listening
+ * to the MineField: each change re-counts just the base blocks it touched
+ * and passes the difference up the levels.  The finer levels are so cheap
+ * to count straight from the bitsets that they aren't stored at all.
+ *
+ * @author richa
+ */
+final class SummaryPyramid implements GameListener {
+
+    // the finest level with arrays: 8x8 blocks
+    static final int BASE = 3;
+
+    private final MineField mf;
+    private final int width, height;
+    private final int levels;            // stored levels: BASE .. BASE+levels-1
+    private final int[] cols, rows;      // blocks across and down, per stored level
+    private final int[][] revealed, flagged;
+
+    // base blocks touched by the current change, de-duplicated
+    private final long[] touched;
+    private int[] touchedList = new int[64];
+    private int touchedCount;
+
+    SummaryPyramid(MineField mf) {
+        this.mf = mf;
+        width = mf.width();
+        height = mf.height();
+
+        int n = 1;
+        while ((width - 1) >> (BASE + n - 1) > 0 || (height - 1) >> (BASE + n - 1) > 0) ++n;
+        levels = n;
+        cols = new int[n];
+        rows = new int[n];
+        revealed = new int[n][];
+        flagged = new int[n][];
+        for (int l = 0; l < n; ++l) {
+            cols[l] = ((width - 1) >> (BASE + l)) + 1;
+            rows[l] = ((height - 1) >> (BASE + l)) + 1;
+            revealed[l] = new int[cols[l] * rows[l]];
+            flagged[l] = new int[cols[l] * rows[l]];
+        }
+        touched = new long[(cols[0] * rows[0] + 63) >>> 6];
+
+        // a new board has nothing set, so this is mostly skipping zero words
+        tally(mf.revealedBits(), revealed[0]);
+        tally(mf.flaggedBits(), flagged[0]);
+        for (int l = 1; l < n; ++l) {
+            for (int by = 0; by < rows[l - 1]; ++by) {
+                for (int bx = 0; bx < cols[l - 1]; ++bx) {
+                    final int from = by * cols[l - 1] + bx;
+                    final int to = (by >> 1) * cols[l] + (bx >> 1);
+                    revealed[l][to] += revealed[l - 1][from];
+                    flagged[l][to] += flagged[l - 1][from];
+                }
+            }
+        }
+    }
+
+    private void tally(long[] bits, int[] counts) {
+        for (int w = 0; w < bits.length; ++w) {
+            for (long b = bits[w]; b != 0; b &= b - 1) {
+                final int idx = (w << 6) + Long.numberOfTrailingZeros(b);
+                ++counts[baseBlock(idx % width, idx / width)];
+            }
+        }
+    }
+
+    /** @return the coarsest level, where a single block covers the board. */
+    int topLevel() { return BASE + levels - 1; }
+
+    /** @return how many cells of the board are in block (bx,by) of the level. */
+    int cellsIn(int level, int bx, int by) {
+        final int x0 = bx << level;
+        final int y0 = by << level;
+        return (Math.min(width, x0 + (1 << level)) - x0) * (Math.min(height, y0 + (1 << level)) - y0);
+    }
+
+    int revealedIn(int level, int bx, int by) {
+        if (level < BASE) return count(mf.revealedBits(), level, bx, by);
+        return revealed[level - BASE][by * cols[level - BASE] + bx];
+    }
+
+    int flaggedIn(int level, int bx, int by) {
+        if (level < BASE) return count(mf.flaggedBits(), level, bx, by);
+        return flagged[level - BASE][by * cols[level - BASE] + bx];
+    }
+
+    // counts the set bits in a block, a row at a time
+    private int count(long[] bits, int level, int bx, int by) {
+        final int x0 = bx << level;
+        final int x1 = Math.min(width, x0 + (1 << level));
+        final int y0 = by << level;
+        final int y1 = Math.min(height, y0 + (1 << level));
+        int n = 0;
+        for (int y = y0; y < y1; ++y) n += countRange(bits, y * width + x0, y * width + x1);
+        return n;
+    }
+
+    // the set bits in [from, to)
+    private static int countRange(long[] bits, int from, int to) {
+        int n = 0;
+        while (from < to) {
+            final int w = from >>> 6;
+            final int end = Math.min(to, (w + 1) << 6);
+            final int endBit = end - (w << 6);
+            final long mask = (-1L << from) & ((endBit == 64) ? -1L : (1L << endBit) - 1);
+            n += Long.bitCount(bits[w] & mask);
+            from = end;
+        }
+        return n;
+    }
+
+    private int baseBlock(int x, int y) {
+        return (y >> BASE) * cols[0] + (x >> BASE);
+    }
+
+    // ------------------------------------------------------------------
+    // keeping up with the field
+
+    @Override
+    public void cellsRevealed(MineField f, RevealResult r) {
+        // (a revealed cell loses its flag without a cellFlagged(), so the
+        // blocks are re-counted rather than adjusted cell by cell)
+        for (int i = 0; i < r.size(); ++i) {
+            final int idx = r.cell(i);
+            touch(baseBlock(idx % width, idx / width));
+        }
+        recountTouched();
+    }
+
+    @Override
+    public void cellFlagged(MineField f, int x, int y, boolean nowFlagged) {
+        touch(baseBlock(x, y));
+        recountTouched();
+    }
+
+    @Override
+    public void gameLost(MineField f, int x, int y) {
+        touch(baseBlock(x, y));
+        recountTouched();
+    }
+
+    // an undo or redo: every base block with a cell in [from, to), a row at a time
+    @Override
+    public void cellsRestored(MineField f, int from, int to) {
+        final int y0 = from / width;
+        final int y1 = (to - 1) / width;
+        for (int y = y0; y <= y1; ++y) {
+            final int x0 = (y == y0) ? from % width : 0;
+            final int x1 = (y == y1) ? (to - 1) % width : width - 1;
+            for (int bx = x0 >> BASE; bx <= x1 >> BASE; ++bx) touch((y >> BASE) * cols[0] + bx);
+        }
+        recountTouched();
+    }
+
+    private void touch(int b) {
+        if (MineField.getBit(touched, b)) return;
+        MineField.setBit(touched, b);
+        if (touchedCount == touchedList.length) touchedList = Arrays.copyOf(touchedList, touchedCount * 2);
+        touchedList[touchedCount++] = b;
+    }
+
+    private void recountTouched() {
+        final long[] rbits = mf.revealedBits();
+        final long[] fbits = mf.flaggedBits();
+        for (int i = 0; i < touchedCount; ++i) {
+            final int b = touchedList[i];
+            MineField.clearBit(touched, b);
+            final int bx = b % cols[0];
+            final int by = b / cols[0];
+            final int dr = count(rbits, BASE, bx, by) - revealed[0][b];
+            final int df = count(fbits, BASE, bx, by) - flagged[0][b];
+            if (dr == 0 && df == 0) continue;
+            for (int l = 0; l < levels; ++l) {
+                final int at = (by >> l) * cols[l] + (bx >> l);
+                revealed[l][at] += dr;
+                flagged[l][at] += df;
+            }
+        }
+        touchedCount = 0;
+    }
+}
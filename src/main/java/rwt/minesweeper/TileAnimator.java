@@ -0,0 +1,208 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Point3D;
+
+/**
+ * Drives the big whole-board effects (the explosion and the victory spin)
+ * for the TileBoard from a single AnimationTimer, instead of building a
+ * Timeline per tile.  The per-tile motion lives in primitive arrays, and
+ * each frame only gets a fixed time budget: if we run out, the remaining
+ * tiles just pick up where they left off on the next frame.
+ *
+ * Tiles that barely move anyway (far from the blast) only get translated,
+ * and tiles in the off-screen margin don't get animated at all.
+ *
+ * @author richa
+ */
+final class TileAnimator {
+
+    private static final long FRAME_BUDGET_NANOS = 4_000_000L;
+
+    private static final long EXPLODE_NANOS = 100_000_000L;
+    private static final long EXPLODE_DELAY_PER_CELL = 20_000_000L;
+    private static final long SPIN_NANOS = 330_000_000L;
+    private static final int SPIN_CYCLES = 4;
+
+    // beyond this distance from the blast, tiles don't tumble, they just slide
+    private static final double TUMBLE_RADIUS = 12.0;
+
+    private static final int EXPLODE = 1;
+    private static final int SPIN = 2;
+
+    private final SplittableRandom rnd = new SplittableRandom();
+
+    private int mode;
+    private long startTime;
+
+    // one slot per animated tile...
+    private TileBox[] tiles = new TileBox[64];
+    private int[] cells = new int[64];        // the cell the tile showed when we started
+    private long[] delays = new long[64];
+    private double[] fromX = new double[64], fromY = new double[64], fromRot = new double[64];
+    private double[] dX = new double[64], dY = new double[64], dRot = new double[64];
+    private boolean[] done = new boolean[64];
+    private int count;
+    private int remaining;
+    private int cursor;   // where to pick up if the last frame ran out of time
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            tick();
+        }
+    };
+
+    /** Stop whatever is going on, leaving tiles where they are. */
+    void stop() {
+        timer.stop();
+        Arrays.fill(tiles, 0, count, null);
+        count = 0;
+        remaining = 0;
+        cursor = 0;
+    }
+
+    /** Start an explosion.  Tiles get added with addExploding. */
+    void beginExplosion() {
+        stop();
+        mode = EXPLODE;
+    }
+
+    void addExploding(TileBox b, int diffx, int diffy, boolean onScreen) {
+        b.setFaceUp(true);
+        if (!onScreen) return;
+
+        // calculate strength as inverse of distance
+        final double dist = Math.sqrt(diffx*diffx+diffy*diffy);
+        final double strength = (dist < 0.1) ? 2.0 : (1.0/dist);
+
+        final int i = add(b);
+        delays[i] = (long) (dist * EXPLODE_DELAY_PER_CELL);
+        fromX[i] = b.getLayoutX();
+        fromY[i] = b.getLayoutY();
+        fromRot[i] = b.getRotate();
+
+        // move the whole tile slightly...
+        dX[i] = rnd.nextDouble()*2.0*strength*b.getWidth()*Math.signum(diffx);
+        dY[i] = rnd.nextDouble()*2.0*strength*b.getHeight()*Math.signum(diffy);
+
+        // ... and, close to the blast, change the rotation axis to
+        // something crazy and rotate it a bit.
+        if (dist < TUMBLE_RADIUS) {
+            final Point3D ra = b.getRotationAxis();
+            b.setRotationAxis(new Point3D((rnd.nextDouble()-0.5)*strength + ra.getX(),
+                                          (rnd.nextDouble()-0.5)*strength + ra.getY(),
+                                          (rnd.nextDouble()-0.5)*strength + ra.getZ()));
+            dRot[i] = (rnd.nextDouble()-0.5)*90*strength;
+        } else {
+            dRot[i] = 0;
+        }
+    }
+
+    /** Start the victory spin.  Tiles get added with addSpinning. */
+    void beginSpin() {
+        stop();
+        mode = SPIN;
+    }
+
+    void addSpinning(TileBox b, boolean onScreen) {
+        b.setFaceUp(true);
+        if (!onScreen) return;
+        final int i = add(b);
+        delays[i] = 0;
+        b.setRotationAxis(javafx.scene.transform.Rotate.X_AXIS);
+    }
+
+    boolean isRunning() { return count > 0; }
+
+    void play() {
+        startTime = System.nanoTime();
+        remaining = count;
+        cursor = 0;
+        if (count > 0) timer.start();
+    }
+
+    private int add(TileBox b) {
+        if (count == tiles.length) grow();
+        tiles[count] = b;
+        cells[count] = b.getCell();
+        done[count] = false;
+        return count++;
+    }
+
+    // (the timer's timestamp isn't guaranteed to match nanoTime(), which
+    // the start time comes from, so we don't use it.)
+    private void tick() {
+        final long now = System.nanoTime();
+        final long deadline = now + FRAME_BUDGET_NANOS;
+        final long elapsed = now - startTime;
+
+        int visited = 0;
+        while (visited < count && remaining > 0) {
+            final int i = cursor;
+            cursor = (cursor + 1 == count) ? 0 : cursor + 1;
+            ++visited;
+            if (done[i]) continue;
+
+            final TileBox b = tiles[i];
+            if (b.getCell() != cells[i]) {
+                // recycled for another cell since we started... leave it be.
+                finish(i);
+                continue;
+            }
+
+            if (mode == EXPLODE) {
+                final double t = clamp((elapsed - delays[i]) / (double) EXPLODE_NANOS);
+                if (t <= 0) continue;
+                b.setLayoutX(fromX[i] + dX[i] * t);
+                b.setLayoutY(fromY[i] + dY[i] * t);
+                if (dRot[i] != 0) b.setRotate(fromRot[i] + dRot[i] * t);
+                if (t >= 1.0) finish(i);
+            } else {
+                if (elapsed >= SPIN_NANOS * SPIN_CYCLES) {
+                    b.setRotate(180);
+                    finish(i);
+                } else {
+                    b.setRotate(180.0 * (elapsed % SPIN_NANOS) / SPIN_NANOS);
+                }
+            }
+
+            // out of time for this frame?  check every so often, since
+            // nanoTime() isn't free either.
+            if ((visited & 63) == 0 && System.nanoTime() > deadline) break;
+        }
+
+        if (remaining == 0) stop();
+    }
+
+    private void finish(int i) {
+        done[i] = true;
+        tiles[i] = null;
+        --remaining;
+    }
+
+    private static double clamp(double t) {
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+
+    private void grow() {
+        final int n = tiles.length * 2;
+        tiles = Arrays.copyOf(tiles, n);
+        cells = Arrays.copyOf(cells, n);
+        delays = Arrays.copyOf(delays, n);
+        fromX = Arrays.copyOf(fromX, n);
+        fromY = Arrays.copyOf(fromY, n);
+        fromRot = Arrays.copyOf(fromRot, n);
+        dX = Arrays.copyOf(dX, n);
+        dY = Arrays.copyOf(dY, n);
+        dRot = Arrays.copyOf(dRot, n);
+        done = Arrays.copyOf(done, n);
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import javafx.animation.Transition;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.util.Duration;
+
+/**
+ * The visual side of the MineField.  Only the cells in the ScrollPane's
+ * viewport (plus a margin) get a TileBox.  As the user scrolls, tiles
+ * that fall out of view go back to a pool and get re-bound to the cells
+ * coming into view, so the node count depends on the window size rather
+ * than the board size.
+ *
+ * This is the "pretty" renderer, with 3D boxes that flip over.
+ *
+ * @author richa
+ */
+public final class TileBoard implements BoardRenderer {
+
+    // cells never shrink smaller than this... once the board doesn't fit
+    // in the window at this size, it scrolls instead.
+    static final double MIN_CELL_SIZE = 24.0;
+
+    // how many cells beyond the viewport to keep materialized, so small
+    // scrolls don't have to re-bind anything.
+    private static final int MARGIN = 2;
+
+    private static final Duration FLIP_TIME = Duration.seconds(0.33);
+
+    private final Pane board;
+    private final ScrollPane scroller;
+
+    private final ArrayDeque<TileBox> pool = new ArrayDeque<>();
+    private final TileAnimator animator = new TileAnimator();
+
+    // bumped whenever all the tiles get released, so reveal animations
+    // still running from before know to leave the tiles alone.
+    private int generation = 0;
+
+    private final ArrayDeque<RingFlip> flipPool = new ArrayDeque<>();
+    private int flipsPlaying;
+    private Duration[] ringDelays = new Duration[64];
+
+    private MineField mineField;
+    private Hints hints;
+    private double cellWidth, cellHeight;
+    private double zoom = 1.0;   // never below 1, since the tiles can't get smaller
+
+    // the materialized window of tiles: cells [winX, winX+winW) x [winY, winY+winH),
+    // stored row-major in `window`.
+    private TileBox[] window = new TileBox[0];
+    private int winX, winY, winW, winH;
+
+    // ... and the cells actually in the viewport, without the margin
+    private int visX0, visY0, visX1, visY1;
+
+    // the one cell the mouse is over, or -1
+    private int hovered = -1;
+
+    // One set of mouse handlers on the board does the work for every tile:
+    // the cell under the pointer is just arithmetic, since the tiles sit on
+    // a regular grid.  (Events from the other renderers' canvases bubble up
+    // here too, but by then this board has no field and ignores them.)
+    public TileBoard(Pane board, ScrollPane scroller, CellClickHandler clickHandler) {
+        this.board = board;
+        this.scroller = scroller;
+        scroller.hvalueProperty().addListener((obs, ov, nv) -> refreshWindow());
+        scroller.vvalueProperty().addListener((obs, ov, nv) -> refreshWindow());
+
+        board.setPickOnBounds(true);  // so clicks land between tiles, too
+        board.addEventHandler(MouseEvent.MOUSE_CLICKED, ev -> {
+            final int idx = cellAt(ev.getX(), ev.getY());
+            if (idx >= 0 && ev.isStillSincePress()) {  // not the end of a drag
+                clickHandler.cellClicked(mineField.xOf(idx), mineField.yOf(idx),
+                        ev.getButton() == MouseButton.SECONDARY);
+            }
+        });
+        board.addEventHandler(MouseEvent.MOUSE_MOVED, ev -> hover(cellAt(ev.getX(), ev.getY())));
+        board.addEventHandler(MouseEvent.MOUSE_EXITED, ev -> hover(-1));
+    }
+
+    /** @return the cell at (px,py) in board coordinates, or -1 if there isn't one. */
+    private int cellAt(double px, double py) {
+        if (mineField == null || px < 0 || py < 0) return -1;
+        final int x = (int) (px / cellWidth);
+        final int y = (int) (py / cellHeight);
+        if (x >= mineField.width() || y >= mineField.height()) return -1;
+        return mineField.index(x, y);
+    }
+
+    private void hover(int idx) {
+        if (idx == hovered) return;
+        if (hovered >= 0) {
+            final TileBox old = tileAt(mineField.xOf(hovered), mineField.yOf(hovered));
+            if (old != null) old.setHovered(false);
+        }
+        hovered = idx;
+        if (idx >= 0) {
+            final TileBox b = tileAt(mineField.xOf(idx), mineField.yOf(idx));
+            if (b != null) b.setHovered(true);
+        }
+    }
+
+    // Existing tiles are kept for re-use.
+    @Override
+    public void setField(MineField mf) {
+        releaseAll();
+        mineField = mf;
+        hints = null;
+        resize();
+    }
+
+    @Override
+    public void clear() {
+        releaseAll();
+        mineField = null;
+    }
+
+    // Recompute the cell size from the viewport, and re-layout the visible tiles.
+    @Override
+    public void resize() {
+        if (mineField == null) return;
+        final double vw = scroller.getViewportBounds().getWidth();
+        final double vh = scroller.getViewportBounds().getHeight();
+        cellWidth = Math.max(vw / mineField.width(), MIN_CELL_SIZE) * zoom;
+        cellHeight = Math.max(vh / mineField.height(), MIN_CELL_SIZE) * zoom;
+        board.setMinSize(cellWidth * mineField.width(), cellHeight * mineField.height());
+
+        for (TileBox b : window) {
+            if (b != null) place(b, b.getCell());
+        }
+        refreshWindow();
+    }
+
+    @Override
+    public double setZoom(double z) {
+        zoom = Math.max(1.0, z);
+        resize();
+        return zoom;
+    }
+
+    /** @return the tile currently showing (x,y), or null if it is off-screen. */
+    private TileBox tileAt(int x, int y) {
+        if (x < winX || y < winY || x >= winX + winW || y >= winY + winH) return null;
+        return window[(y - winY) * winW + (x - winX)];
+    }
+
+    // Re-bind the tile at (x,y), if any, to the cell's current MineField state.
+    @Override
+    public void refreshCell(int x, int y) {
+        final TileBox b = tileAt(x, y);
+        if (b != null) bind(b, mineField.index(x, y));
+    }
+
+    // (any flips still running would turn the tiles back, so they're
+    // told to leave them alone)
+    @Override
+    public void refreshAll() {
+        ++generation;
+        for (TileBox b : window) {
+            if (b != null) bind(b, b.getCell());
+        }
+    }
+
+    @Override
+    public void showHints(Hints h) {
+        hints = h;
+        for (TileBox b : window) {
+            if (b != null) bind(b, b.getCell());
+        }
+    }
+
+    // The cells that are off-screen will simply show up revealed when
+    // scrolled to.  Rather than an animation per tile, each ring of the
+    // reveal gets one shared animation that turns all of its tiles.  The
+    // animations are pooled, so steady-state clicking doesn't allocate.
+    @Override
+    public void animateReveal(RevealResult revealed) {
+        for (int ring = 0; ring < revealed.ringCount(); ++ring) {
+            RingFlip flip = null;
+            for (int i = revealed.ringStart(ring); i < revealed.ringEnd(ring); ++i) {
+                final int idx = revealed.cell(i);
+                final TileBox b = tileAt(mineField.xOf(idx), mineField.yOf(idx));
+                if (b == null) continue;
+                if (flip == null) flip = acquireFlip(revealed.firstRing() + ring);
+                b.setFaceUp(true);
+                flip.add(b, idx);
+            }
+            if (flip != null) {
+                ++flipsPlaying;
+                flip.play();
+            }
+        }
+    }
+
+    @Override
+    public int activeAnimations() {
+        return flipsPlaying + (animator.isRunning() ? 1 : 0);
+    }
+
+    private RingFlip acquireFlip(int ring) {
+        final RingFlip flip = flipPool.isEmpty() ? new RingFlip() : flipPool.pop();
+        flip.reset(ringDelay(ring));
+        return flip;
+    }
+
+    // delay is relative to distance from origin... the Durations get
+    // cached since the same few rings come up over and over.
+    private Duration ringDelay(int ring) {
+        if (ring >= ringDelays.length) {
+            ringDelays = Arrays.copyOf(ringDelays, Math.max(ring + 1, ringDelays.length * 2));
+        }
+        if (ringDelays[ring] == null) ringDelays[ring] = Duration.seconds(ring * 0.04);
+        return ringDelays[ring];
+    }
+
+    // Turns every tile in one ring of a reveal over, together.
+    private final class RingFlip extends Transition {
+        private TileBox[] tiles = new TileBox[16];
+        private int[] cells = new int[16];   // tiles that got recycled for other cells are skipped
+        private int count;
+        private int gen;                     // ... as are all of them, once there's a new game
+
+        RingFlip() {
+            setCycleDuration(FLIP_TIME);
+            setOnFinished(ev -> {
+                --flipsPlaying;
+                Arrays.fill(tiles, 0, count, null);
+                count = 0;
+                flipPool.push(this);
+            });
+        }
+
+        void reset(Duration delay) {
+            gen = generation;
+            count = 0;
+            setDelay(delay);
+        }
+
+        void add(TileBox b, int cell) {
+            if (count == tiles.length) {
+                tiles = Arrays.copyOf(tiles, count * 2);
+                cells = Arrays.copyOf(cells, count * 2);
+            }
+            tiles[count] = b;
+            cells[count++] = cell;
+        }
+
+        @Override
+        protected void interpolate(double frac) {
+            if (gen != generation) return;
+            final double angle = 180 * frac;
+            for (int i = 0; i < count; ++i) {
+                if (tiles[i].getCell() == cells[i]) tiles[i].setRotate(angle);
+            }
+        }
+    }
+
+    // Spin all the on-screen tiles a few times...
+    @Override
+    public void animateWin() {
+        animator.beginSpin();
+        for (TileBox b : window) {
+            if (b != null) {
+                final int idx = b.getCell();
+                animator.addSpinning(b, isOnScreen(mineField.xOf(idx), mineField.yOf(idx)));
+            }
+        }
+        animator.play();
+    }
+
+    @Override
+    public void animateExplosion(int x, int y) {
+        animator.beginExplosion();
+        for (TileBox b : window) {
+            if (b != null) {
+                final int idx = b.getCell();
+                final int bx = mineField.xOf(idx);
+                final int by = mineField.yOf(idx);
+                animator.addExploding(b, bx - x, by - y, isOnScreen(bx, by));
+            }
+        }
+        animator.play();
+    }
+
+    // is (x,y) actually in the viewport, rather than in the margin?
+    private boolean isOnScreen(int x, int y) {
+        return x >= visX0 && x < visX1 && y >= visY0 && y < visY1;
+    }
+
+    // figure out which cells are in (or near) the viewport, and make sure
+    // exactly those cells have tiles.
+    private void refreshWindow() {
+        if (mineField == null) return;
+        final double contentW = cellWidth * mineField.width();
+        final double contentH = cellHeight * mineField.height();
+        final double vw = scroller.getViewportBounds().getWidth();
+        final double vh = scroller.getViewportBounds().getHeight();
+        final double left = Math.max(0, contentW - vw) * scroller.getHvalue();
+        final double top = Math.max(0, contentH - vh) * scroller.getVvalue();
+
+        visX0 = (int) (left / cellWidth);
+        visY0 = (int) (top / cellHeight);
+        visX1 = Math.min(mineField.width(), (int) Math.ceil((left + vw) / cellWidth));
+        visY1 = Math.min(mineField.height(), (int) Math.ceil((top + vh) / cellHeight));
+
+        final int nx = Math.max(0, visX0 - MARGIN);
+        final int ny = Math.max(0, visY0 - MARGIN);
+        final int nx2 = Math.min(mineField.width(), visX1 + MARGIN);
+        final int ny2 = Math.min(mineField.height(), visY1 + MARGIN);
+        final int nw = Math.max(0, nx2 - nx);
+        final int nh = Math.max(0, ny2 - ny);
+        if (nx == winX && ny == winY && nw == winW && nh == winH) return;
+
+        // carry over the tiles that are still in view, and free the rest...
+        final TileBox[] next = new TileBox[nw * nh];
+        for (int y = winY; y < winY + winH; ++y) {
+            for (int x = winX; x < winX + winW; ++x) {
+                final TileBox b = window[(y - winY) * winW + (x - winX)];
+                if (b == null) continue;
+                if (x >= nx && x < nx2 && y >= ny && y < ny2) {
+                    next[(y - ny) * nw + (x - nx)] = b;
+                } else {
+                    release(b);
+                }
+            }
+        }
+
+        // ... then fill in the gaps from the pool.
+        for (int y = ny; y < ny2; ++y) {
+            for (int x = nx; x < nx2; ++x) {
+                final int slot = (y - ny) * nw + (x - nx);
+                if (next[slot] == null) {
+                    final TileBox b = acquire();
+                    bind(b, mineField.index(x, y));
+                    place(b, b.getCell());
+                    next[slot] = b;
+                }
+            }
+        }
+
+        window = next;
+        winX = nx;
+        winY = ny;
+        winW = nw;
+        winH = nh;
+    }
+
+    private void bind(TileBox b, int idx) {
+        b.bind(idx, mineField.countNeighbors(idx), mineField.isRevealed(idx), mineField.isFlagged(idx),
+               hints == null ? -1 : hints.probability(idx));
+        if (idx == hovered) b.setHovered(true);
+    }
+
+    private void place(TileBox b, int idx) {
+        b.setNewSize(cellWidth, cellHeight);
+        b.setPrefSize(cellWidth, cellHeight);
+        b.setLayoutX(mineField.xOf(idx) * cellWidth);
+        b.setLayoutY(mineField.yOf(idx) * cellHeight);
+    }
+
+    private TileBox acquire() {
+        TileBox b = pool.poll();
+        if (b == null) {
+            final TileBox nb = new TileBox();
+            nb.setScaleShape(true);
+            nb.setSnapToPixel(false);
+            nb.getStyleClass().add("cell");
+            board.getChildren().add(nb);
+            b = nb;
+        }
+        b.setVisible(true);
+        return b;
+    }
+
+    // pooled tiles stay in the scene graph, just invisible, so recycling
+    // them doesn't churn the board's child list.
+    private void release(TileBox b) {
+        b.bind(-1, 0, false, false, -1);
+        b.setVisible(false);
+        pool.push(b);
+    }
+
+    private void releaseAll() {
+        animator.stop();
+        ++generation;
+        hovered = -1;
+        for (TileBox b : window) {
+            if (b != null) release(b);
+        }
+        window = new TileBox[0];
+        winX = winY = winW = winH = 0;
+    }
+}
@@ -4,16 +4,11 @@
  */
 package rwt.minesweeper;
 
-import java.util.Random;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.Box;
 import javafx.scene.text.Text;
-import javafx.scene.text.Font;
-import javafx.util.Duration;
-import javafx.animation.*;
-import javafx.geometry.Point3D;
 
 /**
  *
@@ -35,10 +30,33 @@ public final class TileBox extends StackPane {
     private static final PhongMaterial WHITE = new PhongMaterial(Color.WHITESMOKE);
     private static final PhongMaterial BLUE = new PhongMaterial(Color.AQUAMARINE);
     
+    // hint colors, from safe (green) to surely a mine (red), shared with the CanvasBoard
+    static final Color[] HEAT = new Color[11];
+    private static final PhongMaterial[] HEAT_MATERIALS = new PhongMaterial[HEAT.length];
+    static {
+        for(int i = 0; i < HEAT.length; ++i) {
+            HEAT[i] = Color.LIMEGREEN.interpolate(Color.RED, i / (double)(HEAT.length - 1));
+            HEAT_MATERIALS[i] = new PhongMaterial(HEAT[i]);
+        }
+    }
+    
+    static int heatIndex(double probability) {
+        return (int)Math.round(probability * (HEAT.length - 1));
+    }
+    
+    
+    // the size we were last set to, so re-binding a recycled tile
+    // doesn't redo the sizing unless it has to.
+    private double curWidth = -1, curHeight = -1;
+    private int digit = 0;
     
     // Size the sub-components to target a given width and height.
-    // Choose a font size that fits in the height, by guess-and-check
+    // The font comes from the shared FontFit cache.
     public void setNewSize(double width, double height) {
+        if(width == curWidth && height == curHeight) return;
+        curWidth = width;
+        curHeight = height;
+        
         outer.setWidth(width);
         outer.setHeight(height);
         outer.setDepth(Math.min(width, height) * 0.3);
@@ -48,130 +66,94 @@ public final class TileBox extends StackPane {
         inner.setDepth(Math.min(width, height) * 0.1);
         inner.setTranslateZ(-outer.getDepth()*0.5);
         
-        if(label == null) return; // some TileBoxes don't have labels.
-        
-        Font f = Font.font(Math.max(height,width) + 4);
-        label.setFont(f);
-
-        while ( (label.getBoundsInLocal().getHeight() >= height) || 
-                (label.getBoundsInLocal().getWidth() >= width) ) {
-            f = Font.font(f.getSize() - 2);
-            label.setFont(f);
-        }
-       
+        label.setFont(FontFit.fontFor(width, height, digit));
         label.setTranslateZ(outer.getDepth()*0.5);
     }
     
-    public TileBox(double width, double height, int n) {
+    // TileBoxes get recycled as the board scrolls, so they are built
+    // blank and then bound to whatever cell they are showing.
+    public TileBox() {
         super();
    
-        flipped = false;
-        flagged = false;
+        faceUp = false;
         
         outer = new Box();
         outer.setMaterial(TileBox.YELLOW);
         getChildren().add(outer);
   
-        setOnMouseEntered(me -> { 
-           if(!flipped) {
-               outer.setMaterial(TileBox.BLACK);
-           }
-        });
-        setOnMouseExited(me -> {
-               outer.setMaterial(TileBox.YELLOW);
-        });
-        
+        // the TileBoard does all the mouse handling, by position, so the
+        // tiles themselves never need to be picked.
+        setMouseTransparent(true);
         
         inner = new Box();
         inner.setMaterial(TileBox.WHITE);
         getChildren().add(inner);
         
-        if (n > 0) {
-            label = new Text(0, 0, Integer.toString(n));
-            javafx.scene.paint.Paint p = Color.BLACK;
-            switch(n) {
-                case 1: p = Color.BLUE; break;
-                case 2: p = Color.GREEN; break;
-                case 3: p = Color.RED; break;
-                case 4: p = Color.NAVY; break;
-                case 5: p = Color.CRIMSON; break;
-                case 6: p = Color.DARKGREEN; break;
-                case 7: p = Color.DARKORANGE; break;
-            }
-            label.setFill(p);
-            label.setRotationAxis(javafx.scene.transform.Rotate.X_AXIS);
-            label.setRotate(180);
-            getChildren().add(label);
-        } else {
-            label = null;
-        }
-        setNewSize(width, height);
+        label = new Text(0, 0, "0");
+        label.setRotationAxis(javafx.scene.transform.Rotate.X_AXIS);
+        label.setRotate(180);
+        label.setVisible(false);
+        getChildren().add(label);
     }
     
-    private boolean flipped;
-    private boolean flagged;
+    static final String[] DIGITS = { "0", "1", "2", "3", "4", "5", "6", "7", "8" };
     
-    public boolean hasFlipped() { return flipped; }
-    public boolean isFlagged() { return flagged; }
+    // shared with the CanvasBoard, so both renderers color digits alike
+    static final javafx.scene.paint.Paint[] DIGIT_COLORS = {
+        Color.BLACK, Color.BLUE, Color.GREEN, Color.RED, Color.NAVY,
+        Color.CRIMSON, Color.DARKGREEN, Color.DARKORANGE, Color.BLACK
+    };
     
-    public javafx.animation.Transition flip(Duration delay) {
-        flipped = true;
-        outer.setMaterial(TileBox.YELLOW);  // ensure that the box doesn't stay black
+    // which cell (flat MineField index) we are currently showing
+    private int cell = -1;
+    public int getCell() { return cell; }
+    
+    // Point this tile at a new cell, and make it look like that
+    // cell's current state in the MineField.
+    public void bind(int cell, int n, boolean revealed, boolean flagged, double hint) {
+        this.cell = cell;
+        if(n != digit) {
+            digit = n;
+            label.setText(DIGITS[n]);
+            label.setFill(DIGIT_COLORS[n]);
+            if(curWidth > 0) label.setFont(FontFit.fontFor(curWidth, curHeight, n));
+        }
+        label.setVisible(n > 0);
         
-        RotateTransition rt = new RotateTransition(Duration.seconds(0.33),this);
-        rt.setAxis(javafx.scene.transform.Rotate.X_AXIS);
-        rt.setFromAngle(0);
-        rt.setToAngle(180);
-        rt.setCycleCount(1);
-        rt.setDelay(delay);    
-        return rt;
+        faceUp = revealed;
+        outer.setMaterial(TileBox.YELLOW);
+        this.hint = hint;
+        showFlag(flagged);
+        setRotationAxis(javafx.scene.transform.Rotate.X_AXIS);
+        setRotate(revealed ? 180 : 0);
     }
     
-    public void flag() {
-        inner.setMaterial(flagged?TileBox.WHITE:TileBox.BLUE);        
-        flagged = !flagged;  // set/unset the flag.
+    // whether or not the tile is showing its face... this is purely
+    // visual (for the hover effect); the game state lives in the MineField.
+    private boolean faceUp;
+    
+    // used when a tile is being turned over or thrown around, so it
+    // stops hover-highlighting
+    void setFaceUp(boolean up) {
+        faceUp = up;
+        if(up) outer.setMaterial(TileBox.YELLOW);
     }
     
-    Animation explode(final int diffx, final int diffy) {
-         flipped = true;
-         Random r = new Random();
-         Duration p1s = Duration.seconds(0.1);
-         Timeline explosion = new Timeline();
-         explosion.setCycleCount(1);
-         
-         // calculate strength as inverse of distance
-         double dist = Math.sqrt(diffx*diffx+diffy*diffy);
-         double strength = (dist < 0.1) ? 2.0 : (1.0/dist);
-
-         // change the rotation axis to something crazy..
-         Point3D ra = getRotationAxis();         
-         KeyFrame kf0 = new KeyFrame(Duration.ZERO, new KeyValue(rotationAxisProperty(), ra));
-         KeyFrame kf1 = new KeyFrame(p1s, new KeyValue(rotationAxisProperty(), 
-                                                       new Point3D((r.nextDouble()-0.5)*strength + ra.getX(),
-                                                                   (r.nextDouble()-0.5)*strength + ra.getY(),
-                                                                   (r.nextDouble()-0.5)*strength + ra.getZ())));
-         explosion.getKeyFrames().addAll(kf0,kf1);
-
-         // now rotate it a bit...         
-         kf0 = new KeyFrame(Duration.ZERO, new KeyValue(rotateProperty(), getRotate()));
-         kf1 = new KeyFrame(p1s, new KeyValue(rotateProperty(), 
-                                              getRotate() + (r.nextDouble()-0.5)*90*strength));
-         explosion.getKeyFrames().addAll(kf0,kf1);
-
-         // now move the whole tile slightly...
-         double endX = r.nextDouble()*2.0*strength*getWidth()*Math.signum(diffx);
-         double endY = r.nextDouble()*2.0*strength*getHeight()*Math.signum(diffy);
-
-         kf0 = new KeyFrame(Duration.ZERO, new KeyValue(layoutXProperty(), getLayoutX()));
-         kf1 = new KeyFrame(p1s,new KeyValue(layoutXProperty(), getLayoutX() + endX));
-         explosion.getKeyFrames().addAll(kf0,kf1);
-         
-         kf0 = new KeyFrame(Duration.ZERO, new KeyValue(layoutYProperty(), getLayoutY()));
-         kf1 = new KeyFrame(p1s,new KeyValue(layoutYProperty(), getLayoutY() + endY));
-         explosion.getKeyFrames().addAll(kf0,kf1);
-         
-         // start a little later if we are far from the blast site
-         explosion.setDelay(Duration.seconds(dist * 0.02));
-         return explosion;
+    // the mouse is over this tile (only face-down tiles light up)
+    void setHovered(boolean hovered) {
+        outer.setMaterial((hovered && !faceUp) ? TileBox.BLACK : TileBox.YELLOW);
+    }
+    
+    // the Solver's idea of how likely this is a mine, or -1 for no hint
+    private double hint = -1;
+    
+    public void showFlag(boolean flagged) {
+        if(flagged) {
+            inner.setMaterial(TileBox.BLUE);
+        } else if(hint >= 0) {
+            inner.setMaterial(HEAT_MATERIALS[heatIndex(hint)]);
+        } else {
+            inner.setMaterial(TileBox.WHITE);
+        }
     }
 }
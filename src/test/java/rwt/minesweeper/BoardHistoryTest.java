@@ -0,0 +1,253 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Undo and redo: a game is played and a BoardVersion kept after each move,
+ * the way the engine does it, along with a plain copy of the field.  Then
+ * restoring any version, from any other, has to give back exactly that
+ * field, and a version's snapshot has to be the field's own.
+ *
+ * @author richa
+ */
+class BoardHistoryTest {
+
+   // 230x190 spans eleven leaves, with a part-filled one at the end
+   private static final int W = 230, H = 190;
+
+   @Test
+   void persistentBitsGiveBackWhatWentIn() {
+      final SplittableRandom rnd = new SplittableRandom(4L);
+      final long[] live = new long[(W * H + 63) >>> 6];
+      for (int i = 0; i < live.length; ++i) live[i] = rnd.nextLong();
+      live[live.length - 1] &= (1L << ((W * H) & 63)) - 1;
+      final PersistentBits first = PersistentBits.of(live);
+      final long[] out = new long[live.length];
+      first.writeTo(out);
+      assertArrayEquals(live, out);
+
+      // change bits in two leaves, and only those come back different
+      final long[] before = live.clone();
+      final int a = 5000, b = W * H - 3;
+      MineField.setBit(live, a);
+      MineField.clearBit(live, b);
+      final int[] leaves = { PersistentBits.leafOf(b), PersistentBits.leafOf(a) };
+      final PersistentBits second = first.with(live, leaves, 2);
+      second.writeTo(out);
+      assertArrayEquals(live, out);
+
+      // and writing the old one back over them undoes it
+      first.writeOver(second, live, leaf -> { });
+      assertArrayEquals(before, live);
+   }
+
+   @Test
+   void undoRedoAndJumpsGiveTheSameFields() {
+      for (long seed = 0; seed < 4; ++seed) {
+         final Game g = play(seed);
+         final MineField mf = g.field;
+         final int last = g.versions.size() - 1;
+
+         // back to the start one move at a time, then forward again
+         for (int i = last; i > 0; --i) {
+            mf.restore(g.versions.get(i), g.versions.get(i - 1));
+            g.states.get(i - 1).check(mf, "undo to " + i + ", seed " + seed);
+         }
+         for (int i = 0; i < last; ++i) {
+            mf.restore(g.versions.get(i), g.versions.get(i + 1));
+            g.states.get(i + 1).check(mf, "redo to " + (i + 1) + ", seed " + seed);
+         }
+
+         // and anywhere to anywhere
+         final SplittableRandom rnd = new SplittableRandom(seed);
+         int at = last;
+         for (int n = 0; n < 200; ++n) {
+            final int to = rnd.nextInt(last + 1);
+            mf.restore(g.versions.get(at), g.versions.get(to));
+            g.states.get(to).check(mf, "jump " + at + " to " + to + ", seed " + seed);
+            at = to;
+         }
+      }
+   }
+
+   @Test
+   void aCopyFollowsTheRestores() {
+      // what the FX side does: its copy is restored alongside the engine's field
+      final Game g = play(9L);
+      final MineField copy = g.field.copy();
+      final int last = g.versions.size() - 1;
+      final SplittableRandom rnd = new SplittableRandom(9L);
+      int at = last;
+      for (int n = 0; n < 100; ++n) {
+         final int to = rnd.nextInt(last + 1);
+         g.field.restore(g.versions.get(at), g.versions.get(to));
+         copy.restore(g.versions.get(at), g.versions.get(to));
+         g.states.get(to).check(copy, "copy, jump " + at + " to " + to);
+         at = to;
+      }
+   }
+
+   @Test
+   void aResetUndoesAHalfDoneMove() {
+      // what the engine does when a move throws: no version was made, and
+      // whatever the field got to has to go
+      final Game g = play(6L);
+      final MineField mf = g.field;
+      final int last = g.versions.size() - 1;
+      final int to = last / 2;
+      mf.restore(g.versions.get(last), g.versions.get(to));
+      final SplittableRandom rnd = new SplittableRandom(6L);
+      for (int n = 0; n < 40; ++n) {
+         final int c = rnd.nextInt(mf.cellCount());
+         if (mf.hasBomb(c)) mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+         else mf.open(mf.xOf(c), mf.yOf(c));
+      }
+      final int[] restored = new int[2];
+      mf.addListener(new GameListener() {
+         @Override
+         public void cellsRestored(MineField f, int from, int until) {
+            restored[0] = Math.min(restored[0], from);
+            restored[1] = Math.max(restored[1], until);
+         }
+      });
+      mf.reset(g.versions.get(to));
+      g.states.get(to).check(mf, "reset to " + to);
+      assertArrayEquals(new int[] { 0, mf.cellCount() }, restored);
+
+      // a copy that had some of it gets put back the same way
+      final MineField copy = mf.copy();
+      copy.open(0, 0);
+      copy.reset(g.versions.get(to));
+      g.states.get(to).check(copy, "copy reset to " + to);
+   }
+
+   @Test
+   void aVersionsSnapshotIsTheFieldsOwn() {
+      final Game g = play(2L);
+      final MineField mf = g.field;
+      int at = g.versions.size() - 1;
+      for (int to = at; to >= 0; to -= 3) {
+         mf.restore(g.versions.get(at), g.versions.get(to));
+         at = to;
+         final BoardSnapshot want = mf.snapshot();
+         final BoardSnapshot got = g.versions.get(to).snapshot(mf);
+         assertEquals(want.width(), got.width());
+         assertEquals(want.height(), got.height());
+         assertEquals(want.howManyMines(), got.howManyMines());
+         for (int c = 0; c < mf.cellCount(); ++c) {
+            assertEquals(want.isRevealed(c), got.isRevealed(c), "version " + to + " cell " + c);
+            assertEquals(want.countNeighbors(c), got.countNeighbors(c), "version " + to + " cell " + c);
+         }
+      }
+   }
+
+   // ------------------------------------------------------------------
+
+   private static final class Game {
+      final MineField field;
+      final List<BoardVersion> versions = new ArrayList<>();
+      final List<State> states = new ArrayList<>();
+
+      Game(MineField field) { this.field = field; }
+   }
+
+   // everything restore() has to put back
+   private record State(long[] revealed, long[] flagged, MineField.State state,
+                        int safeRemaining, int flagsPlaced, int minesFlagged, int minesRemaining) {
+
+      static State of(MineField mf) {
+         return new State(mf.revealedBits().clone(), mf.flaggedBits().clone(), mf.getState(),
+               mf.safeCellsRemaining(), mf.flagsPlaced(), mf.minesFlagged(), mf.minesRemaining());
+      }
+
+      void check(MineField mf, String where) {
+         assertArrayEquals(revealed, mf.revealedBits(), where);
+         assertArrayEquals(flagged, mf.flaggedBits(), where);
+         assertEquals(state, mf.getState(), where);
+         assertEquals(safeRemaining, mf.safeCellsRemaining(), where);
+         assertEquals(flagsPlaced, mf.flagsPlaced(), where);
+         assertEquals(minesFlagged, mf.minesFlagged(), where);
+         assertEquals(minesRemaining, mf.minesRemaining(), where);
+      }
+   }
+
+   /**
+    * Plays opens and flags at random on a safe-first-click board (so the
+    * first move places the mines), then steps on a mine, keeping a version
+    * and the field's state after every move.
+    */
+   private static Game play(long seed) {
+      final MineField mf = new MineField(W, H, 0.12, seed, true);
+      final Game g = new Game(mf);
+      final Leaves touched = new Leaves();
+      mf.addListener(touched);
+      g.versions.add(BoardVersion.first(mf, 0));
+      g.states.add(State.of(mf));
+
+      final SplittableRandom rnd = new SplittableRandom(seed);
+      int moves = 0;
+      while (moves < 120) {
+         final int c = rnd.nextInt(mf.cellCount());
+         if (mf.isRevealed(c)) continue;
+         if (moves > 0 && rnd.nextInt(3) == 0) {
+            mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+         } else if (moves == 0 || (!mf.hasBomb(c) && !mf.isFlagged(c))) {
+            mf.open(mf.xOf(c), mf.yOf(c));
+         } else {
+            continue;
+         }
+         record(g, touched, ++moves);
+         if (mf.isOver()) return g;
+      }
+      for (int c = 0; c < mf.cellCount(); ++c) {
+         if (mf.hasBomb(c) && !mf.isFlagged(c)) {
+            mf.open(mf.xOf(c), mf.yOf(c));
+            record(g, touched, ++moves);
+            break;
+         }
+      }
+      assertEquals(MineField.State.LOST, mf.getState());
+      return g;
+   }
+
+   private static void record(Game g, Leaves touched, int moves) {
+      final BoardVersion last = g.versions.get(g.versions.size() - 1);
+      g.versions.add(last.next(g.field, touched.leaves, touched.count, moves));
+      g.states.add(State.of(g.field));
+      touched.count = 0;
+   }
+
+   // the leaves a move changed, as the engine collects them
+   private static final class Leaves implements GameListener {
+      final int[] leaves = new int[64];
+      int count;
+
+      private void touch(int cell) {
+         final int leaf = PersistentBits.leafOf(cell);
+         for (int i = 0; i < count; ++i) if (leaves[i] == leaf) return;
+         leaves[count++] = leaf;
+      }
+
+      @Override
+      public void cellsRevealed(MineField mf, RevealResult r) {
+         for (int i = 0; i < r.size(); ++i) touch(r.cell(i));
+      }
+
+      @Override
+      public void cellFlagged(MineField mf, int x, int y, boolean flagged) { touch(mf.index(x, y)); }
+
+      @Override
+      public void gameLost(MineField mf, int x, int y) { touch(mf.index(x, y)); }
+   }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The endless field's reveal, which stops after so many cells on a board
+ * with no edges: the next click on an open empty cell carries on from
+ * where it stopped, rather than leaving a ring of unopened cells behind.
+ *
+ * @author richa
+ */
+class EndlessFieldTest {
+
+   @Test
+   void aCutOffRevealCarriesOn() {
+      final EndlessField ef = new EndlessField(0.0, 1L, msg -> fail(msg));
+      try {
+         final int first = ef.open(0, 0);
+         assertTrue(first > 0);
+         assertTrue(ef.hasFrontier(), "an empty endless board should have cut the reveal off");
+
+         // anywhere open and empty will do, not just where the click was
+         final int more = ef.open(1, 1);
+         assertTrue(more > 0, "the second click revealed nothing");
+         assertEquals(first + more, ef.cellsRevealed());
+      } finally {
+         ef.close();
+      }
+   }
+
+   @Test
+   void aSmallRevealLeavesNoFrontier() {
+      final EndlessField ef = new EndlessField(0.2, 7L, msg -> fail(msg));
+      try {
+         assertTrue(ef.open(0, 0) > 0);
+         assertFalse(ef.hasFrontier());
+         assertEquals(0, ef.open(0, 0));
+      } finally {
+         ef.close();
+      }
+   }
+
+   @Test
+   void farOffRevealsDontPileUpAFrontier() {
+      final EndlessField ef = new EndlessField(0.0, 3L, msg -> fail(msg));
+      try {
+         ef.open(0, 0);
+         final int one = ef.frontierCells();
+         assertTrue(one > 0);
+         // each of these is far from the others, and the chunk cache only
+         // holds about five of them, so only their frontiers should be left
+         for (int i = 1; i <= 20; ++i) ef.open(i * 10_000, 0);
+         assertTrue(ef.frontierCells() <= 6 * one, "kept " + ef.frontierCells() + " frontier cells");
+         assertTrue(ef.hasFrontier());
+      } finally {
+         ef.close();
+      }
+   }
+
+   @Test
+   void aChunkThatCantSpillEndsTheGame(@TempDir Path tmp) throws IOException {
+      // a file where the spill directory should go, so no spill can work
+      final Path notADir = Files.createFile(tmp.resolve("spill"));
+      final List<String> trouble = new ArrayList<>();
+      final EndlessField ef = new EndlessField(0.0, 5L, notADir, trouble::add);
+      try {
+         // a flag in each of more chunks than the cache holds
+         int flags = 0;
+         while (ef.toggleFlag(flags * EndlessField.CHUNK_SIZE, 0)) ++flags;
+         assertTrue(ef.isOver());
+         assertEquals(1, trouble.size());
+         assertFalse(ef.isLost());
+         assertFalse(ef.toggleFlag(1, 0));
+         assertEquals(0, ef.open(0, 5));
+
+         // the chunk that couldn't be spilled still has its flag...
+         assertTrue(ef.isFlagged(0, 0));
+         // ... and looking around doesn't pile up chunks without end
+         final int loaded = ef.chunksLoaded();
+         for (int i = 0; i < 4 * loaded; ++i) ef.hasBomb(0, (i + 1) * EndlessField.CHUNK_SIZE);
+         assertTrue(ef.chunksLoaded() <= 2 * loaded, ef.chunksLoaded() + " chunks loaded");
+         for (int i = 0; i < flags; ++i) assertTrue(ef.isFlagged(i * EndlessField.CHUNK_SIZE, 0));
+      } finally {
+         ef.close();
+      }
+   }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The flood reveal on big empty regions: no recursion to blow the stack,
+ * and a million cells in well under 100ms.
+ *
+ * @author richa
+ */
+class FloodRevealTest {
+
+   private static final int SIDE = 1000;   // a million cells
+   private static final long TARGET_NANOS = 100_000_000L;
+
+   @Test
+   void aMillionEmptyCellsOpenInOneClick() {
+      final MineField mf = new MineField(SIDE, SIDE, 0.0, 1L, false);
+      assertEquals(SIDE * SIDE, mf.revealFrom(SIDE / 2, SIDE / 2));
+      assertEquals(MineField.State.WON, mf.getState());
+   }
+
+   @Test
+   void aMillionCellRevealIsQuick() {
+      // warm up, so the JIT has compiled the flood before it's timed
+      for (int i = 0; i < 10; ++i) new MineField(SIDE, SIDE, 0.0, i, false).revealFrom(0, 0);
+
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < 5; ++i) {
+         final MineField mf = new MineField(SIDE, SIDE, 0.0, i, false);
+         final long start = System.nanoTime();
+         mf.revealFrom(SIDE / 2, SIDE / 2);
+         best = Math.min(best, System.nanoTime() - start);
+      }
+      final long took = best;
+      assertTrue(took < TARGET_NANOS, () -> String.format("best reveal took %.1fms", took / 1e6));
+   }
+
+   @Test
+   void aLongThinRegionDoesntRecurse() {
+      // one cell wide, so a recursive flood would be a million frames deep
+      final MineField mf = new MineField(1, SIDE * SIDE, 0.0, 1L, false);
+      assertEquals(SIDE * SIDE, mf.revealFrom(0, 0));
+   }
+
+   @Test
+   void aSparseBoardOpensAroundTheMines() {
+      final MineField mf = new MineField(SIDE, SIDE, 0.001, SIDE / 2, SIDE / 2, 5L);
+      final int n = mf.revealFrom(SIDE / 2, SIDE / 2);
+      assertTrue(n > SIDE * SIDE / 2, "only " + n + " cells opened");
+      assertEquals(mf.cellCount() - mf.howManyMines() - n, mf.safeCellsRemaining());
+   }
+}
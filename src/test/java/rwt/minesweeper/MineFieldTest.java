@@ -0,0 +1,309 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * MineField against the plain cell-by-cell rules of the game: neighbor
+ * counts, the flood reveal, flags and win detection, all checked against
+ * a naive model that looks at one cell at a time.
+ *
+ * @author richa
+ */
+class MineFieldTest {
+
+   // widths around the 64-bit word edges, where the bit tricks could slip
+   private static final int[][] SIZES = { {1, 1}, {1, 40}, {40, 1}, {9, 9}, {63, 7}, {64, 5}, {65, 9}, {130, 33} };
+
+   @Test
+   void countsMatchTheNeighbors() {
+      for (int[] size : SIZES) {
+         for (long seed = 0; seed < 5; ++seed) {
+            final MineField mf = new MineField(size[0], size[1], 0.3, seed, false);
+            for (int c = 0; c < mf.cellCount(); ++c) {
+               final int expected = mf.hasBomb(c) ? 0 : naiveCount(mf, mf.xOf(c), mf.yOf(c));
+               assertEquals(expected, mf.countNeighbors(c), "cell " + c + " of " + size[0] + "x" + size[1]);
+            }
+         }
+      }
+   }
+
+   @Test
+   void snapshotsOnlyShowRevealedCounts() {
+      final MineField mf = new MineField(65, 9, 0.15, 4, 4, 7L);
+      mf.open(4, 4);
+      final BoardSnapshot snap = mf.snapshot();
+      for (int c = 0; c < mf.cellCount(); ++c) {
+         assertEquals(mf.isRevealed(c) ? mf.countNeighbors(c) : -1, snap.countNeighbors(c));
+      }
+   }
+
+   @Test
+   void revealFloodsLikeTheRules() {
+      for (int[] size : SIZES) {
+         for (long seed = 0; seed < 5; ++seed) {
+            final MineField mf = new MineField(size[0], size[1], 0.1, seed, false);
+            final int start = firstSafe(mf);
+            if (start < 0) continue;
+            final boolean[] expected = naiveFlood(mf, start);
+
+            final Recorder rec = new Recorder(mf);
+            mf.addListener(rec);
+            final int n = mf.revealFrom(mf.xOf(start), mf.yOf(start));
+
+            int count = 0;
+            for (int c = 0; c < mf.cellCount(); ++c) {
+               assertEquals(expected[c], mf.isRevealed(c), "cell " + c);
+               if (expected[c]) ++count;
+            }
+            assertEquals(count, n);
+            assertEquals(count, rec.cells);
+            assertEquals(mf.cellCount() - mf.howManyMines() - count, mf.safeCellsRemaining());
+         }
+      }
+   }
+
+   @Test
+   void revealedCellsComeInRingsOfDistance() {
+      // big enough to come out in more than one batch
+      final MineField mf = new MineField(400, 300, 0.02, 200, 150, 3L);
+      final int[] distance = naiveDistances(mf, mf.index(200, 150));
+      final Recorder rec = new Recorder(mf) {
+         @Override
+         public void cellsRevealed(MineField f, RevealResult r) {
+            super.cellsRevealed(f, r);
+            assertTrue(r.size() <= MineField.REVEAL_BATCH);
+            for (int ring = 0; ring < r.ringCount(); ++ring) {
+               for (int i = r.ringStart(ring); i < r.ringEnd(ring); ++i) {
+                  assertEquals(distance[r.cell(i)], r.firstRing() + ring, "cell " + r.cell(i));
+               }
+            }
+         }
+      };
+      mf.addListener(rec);
+      mf.open(200, 150);
+      assertTrue(rec.batches > 1, "expected several batches, got " + rec.batches);
+      assertEquals(rec.cells, countRevealed(mf));
+   }
+
+   @Test
+   void aRevealedCellAlreadyOpenRevealsNothing() {
+      final MineField mf = new MineField(20, 20, 0.1, 10, 10, 1L);
+      mf.open(10, 10);
+      assertEquals(0, mf.revealFrom(10, 10));
+   }
+
+   @Test
+   void flagsAreCounted() {
+      final MineField mf = new MineField(30, 20, 0.2, 9L, false);
+      final int mine = firstMine(mf);
+      final int safe = firstSafe(mf);
+
+      assertTrue(mf.toggleFlag(mf.xOf(mine), mf.yOf(mine)));
+      assertTrue(mf.toggleFlag(mf.xOf(safe), mf.yOf(safe)));
+      assertEquals(2, mf.flagsPlaced());
+      assertEquals(1, mf.minesFlagged());
+      assertEquals(mf.howManyMines() - 2, mf.minesRemaining());
+
+      // a flagged cell can't be opened by a click...
+      mf.open(mf.xOf(safe), mf.yOf(safe));
+      assertFalse(mf.isRevealed(safe));
+
+      assertFalse(mf.toggleFlag(mf.xOf(mine), mf.yOf(mine)));
+      assertEquals(1, mf.flagsPlaced());
+      assertEquals(0, mf.minesFlagged());
+   }
+
+   @Test
+   void theFloodTakesFlagsWithIt() {
+      final MineField mf = new MineField(50, 50, 0.0, 1L, false);
+      mf.toggleFlag(40, 40);
+      mf.open(0, 0);
+      assertTrue(mf.isRevealed(40, 40));
+      assertFalse(mf.isFlagged(40, 40));
+      assertEquals(0, mf.flagsPlaced());
+      assertEquals(MineField.State.WON, mf.getState());
+   }
+
+   @Test
+   void openingEverySafeCellWins() {
+      final MineField mf = new MineField(65, 9, 0.2, 11L, false);
+      final Recorder rec = new Recorder(mf);
+      mf.addListener(rec);
+      for (int c = 0; c < mf.cellCount(); ++c) {
+         if (mf.hasBomb(c) || mf.isRevealed(c)) continue;
+         assertEquals(MineField.State.PLAYING, mf.getState());
+         mf.open(mf.xOf(c), mf.yOf(c));
+      }
+      assertEquals(MineField.State.WON, mf.getState());
+      assertEquals(1, rec.wins);
+      assertEquals(0, mf.safeCellsRemaining());
+      assertEquals(mf.cellCount() - mf.howManyMines(), rec.cells);
+   }
+
+   @Test
+   void aFloodOneCellPastABatchWinsOnceAtTheEnd() {
+      // 145x113 is REVEAL_BATCH + 1 cells, so the winning cell is alone in
+      // the flood's second batch
+      final MineField mf = new MineField(145, 113, 0.0, 1L, false);
+      assertEquals(MineField.REVEAL_BATCH + 1, mf.cellCount());
+      final Recorder rec = new Recorder(mf);
+      mf.addListener(rec);
+
+      // and a copy brought along batch by batch, as the engine does it
+      final MineField copy = mf.copy();
+      final Recorder copied = new Recorder(copy);
+      copy.addListener(copied);
+      mf.addListener(new GameListener() {
+         @Override
+         public void cellsRevealed(MineField f, RevealResult r) { copy.applyReveal(r); }
+      });
+
+      mf.open(0, 0);
+      for (Recorder r : new Recorder[] {rec, copied}) {
+         assertEquals(2, r.batches);
+         assertEquals(1, r.wins);
+         assertEquals(MineField.REVEAL_BATCH + 1, r.cellsAtWin);
+      }
+      assertEquals(MineField.State.WON, mf.getState());
+      assertEquals(MineField.State.WON, copy.getState());
+   }
+
+   @Test
+   void openingAMineLoses() {
+      final MineField mf = new MineField(20, 20, 0.2, 5L, false);
+      final Recorder rec = new Recorder(mf);
+      mf.addListener(rec);
+      final int mine = firstMine(mf);
+      mf.open(mf.xOf(mine), mf.yOf(mine));
+      assertEquals(MineField.State.LOST, mf.getState());
+      assertEquals(1, rec.losses);
+
+      // ... and that's the end of it
+      final int safe = firstSafe(mf);
+      mf.open(mf.xOf(safe), mf.yOf(safe));
+      assertFalse(mf.isRevealed(safe));
+   }
+
+   @Test
+   void theFirstClickIsSafe() {
+      for (long seed = 0; seed < 20; ++seed) {
+         final MineField mf = new MineField(9, 9, 0.5, seed, true);
+         assertFalse(mf.minesPlaced());
+         mf.open(0, 8);
+         assertTrue(mf.minesPlaced());
+         assertEquals(0, mf.countNeighbors(0, 8));
+         assertEquals(MineField.State.PLAYING, mf.getState());
+      }
+   }
+
+   @Test
+   void aRebuiltFieldKeepsItsTallies() {
+      final MineField mf = new MineField(40, 30, 0.15, 20, 15, 2L);
+      mf.open(20, 15);
+      mf.toggleFlag(mf.xOf(firstMine(mf)), mf.yOf(firstMine(mf)));
+      final MineField back = new MineField(mf.width(), mf.height(), mf.howManyMines(), mf.seed(), true,
+            mf.mineBits().clone(), mf.revealedBits().clone(), mf.flaggedBits().clone());
+      assertEquals(mf.safeCellsRemaining(), back.safeCellsRemaining());
+      assertEquals(mf.flagsPlaced(), back.flagsPlaced());
+      assertEquals(mf.minesFlagged(), back.minesFlagged());
+      assertEquals(mf.getState(), back.getState());
+      for (int c = 0; c < mf.cellCount(); ++c) assertEquals(mf.countNeighbors(c), back.countNeighbors(c));
+   }
+
+   // ------------------------------------------------------------------
+   // the naive model
+
+   private static int naiveCount(MineField mf, int x, int y) {
+      int n = 0;
+      for (int dy = -1; dy <= 1; ++dy) {
+         for (int dx = -1; dx <= 1; ++dx) {
+            final int nx = x + dx, ny = y + dy;
+            if ((dx | dy) != 0 && nx >= 0 && ny >= 0 && nx < mf.width() && ny < mf.height() && mf.hasBomb(nx, ny)) ++n;
+         }
+      }
+      return n;
+   }
+
+   // how many steps each cell is from start, through zero cells (or -1)
+   private static int[] naiveDistances(MineField mf, int start) {
+      final int[] dist = new int[mf.cellCount()];
+      Arrays.fill(dist, -1);
+      final ArrayDeque<Integer> todo = new ArrayDeque<>();
+      dist[start] = 0;
+      todo.add(start);
+      while (!todo.isEmpty()) {
+         final int c = todo.poll();
+         final int x = mf.xOf(c), y = mf.yOf(c);
+         if (naiveCount(mf, x, y) != 0) continue;
+         for (int dy = -1; dy <= 1; ++dy) {
+            for (int dx = -1; dx <= 1; ++dx) {
+               final int nx = x + dx, ny = y + dy;
+               if (nx < 0 || ny < 0 || nx >= mf.width() || ny >= mf.height()) continue;
+               final int n = mf.index(nx, ny);
+               if (dist[n] >= 0 || mf.isRevealed(n)) continue;
+               dist[n] = dist[c] + 1;
+               todo.add(n);
+            }
+         }
+      }
+      return dist;
+   }
+
+   private static boolean[] naiveFlood(MineField mf, int start) {
+      final int[] dist = naiveDistances(mf, start);
+      final boolean[] open = new boolean[dist.length];
+      for (int c = 0; c < dist.length; ++c) open[c] = dist[c] >= 0 || mf.isRevealed(c);
+      return open;
+   }
+
+   private static int firstSafe(MineField mf) {
+      for (int c = 0; c < mf.cellCount(); ++c) if (!mf.hasBomb(c)) return c;
+      return -1;
+   }
+
+   private static int firstMine(MineField mf) {
+      for (int c = 0; c < mf.cellCount(); ++c) if (mf.hasBomb(c)) return c;
+      return -1;
+   }
+
+   private static int countRevealed(MineField mf) {
+      int n = 0;
+      for (int c = 0; c < mf.cellCount(); ++c) if (mf.isRevealed(c)) ++n;
+      return n;
+   }
+
+   private static class Recorder implements GameListener {
+      final MineField field;
+      int cells, batches, wins, losses;
+      int cellsAtWin = -1;   // how many cells had been announced when the win was
+
+      Recorder(MineField field) { this.field = field; }
+
+      @Override
+      public void cellsRevealed(MineField f, RevealResult r) {
+         assertTrue(f == field);
+         cells += r.size();
+         ++batches;
+      }
+
+      @Override
+      public void gameWon(MineField f) {
+         ++wins;
+         cellsAtWin = cells;
+      }
+
+      @Override
+      public void gameLost(MineField f, int x, int y) { ++losses; }
+   }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a move (an open or a flag) doesn't allocate, once the
+ * buffers it re-uses have grown to fit, and that the history keeps no more
+ * for a move than the part of the board it changed.  The per-thread
+ * allocation counter sees every byte allocated on this thread, so anything
+ * that sneaks back into the move path shows up here.
+ *
+ * @author richa
+ */
+class MoveAllocationTest {
+
+   private static final com.sun.management.ThreadMXBean THREADS =
+         (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+   // what a move may allocate, on average: the reveal buffers grow a few
+   // times during the first big cascades, and that's all.
+   private static final long BYTES_PER_MOVE = 16;
+
+   // what undo keeps for a flag: the version, its flag bits, the node above
+   // the leaf, and the 512-byte leaf itself
+   private static final long HISTORY_BYTES_PER_FLAG = 800;
+
+   @Test
+   void movesDontAllocate() {
+      // warm up, so the JIT has compiled the move path before we measure
+      for (int g = 0; g < 30; ++g) play(new MineField(120, 120, 0.15, g, false), false);
+
+      long total = 0, count = 0;
+      for (int g = 0; g < 5; ++g) {
+         final MineField mf = new MineField(200, 200, 0.15, 1000 + g, false);
+         final long before = THREADS.getCurrentThreadAllocatedBytes();
+         count += play(mf, true);
+         total += THREADS.getCurrentThreadAllocatedBytes() - before;
+      }
+      final long bytes = total, moves = count;
+      assertTrue(bytes <= moves * BYTES_PER_MOVE,
+            () -> String.format("%,d bytes over %,d moves", bytes, moves));
+   }
+
+   @Test
+   void copyingARevealDoesntAllocate() {
+      // what the engine does with each batch, into a slot of its ring
+      final RevealResult slot = new RevealResult();
+      final long[] bytes = new long[1];
+      final GameListener copier = new GameListener() {
+         @Override
+         public void cellsRevealed(MineField f, RevealResult r) {
+            final long before = THREADS.getCurrentThreadAllocatedBytes();
+            slot.copyFrom(r);
+            bytes[0] += THREADS.getCurrentThreadAllocatedBytes() - before;
+         }
+      };
+      final MineField first = new MineField(300, 300, 0.0, 1L, false);
+      first.addListener(copier);
+      first.open(0, 0);   // grows the slot to a whole batch
+
+      bytes[0] = 0;
+      final MineField mf = new MineField(300, 300, 0.0, 2L, false);
+      mf.addListener(copier);
+      mf.open(0, 0);
+      assertTrue(bytes[0] == 0, bytes[0] + " bytes to copy a reveal");
+   }
+
+   @Test
+   void aFlagOnlyKeepsTheLeafItChanged() {
+      final MineField mf = new MineField(200, 200, 0.15, 3L, false);
+      final int[] leaf = new int[1];
+      BoardVersion v = BoardVersion.first(mf, 0);
+      for (int c = 0; c < 20; ++c) {   // warm up
+         mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+         leaf[0] = PersistentBits.leafOf(c);
+         v = v.next(mf, leaf, 1, c + 1);
+      }
+
+      long total = 0;
+      int count = 0;
+      for (int c = 20; c < mf.cellCount(); c += 7, ++count) {
+         final long before = THREADS.getCurrentThreadAllocatedBytes();
+         mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+         leaf[0] = PersistentBits.leafOf(c);
+         final BoardVersion next = v.next(mf, leaf, 1, count);
+         total += THREADS.getCurrentThreadAllocatedBytes() - before;
+         assertTrue(next.revealed() == v.revealed(), "a flag copied the revealed bits");
+         v = next;
+      }
+      final long bytes = total, flags = count;
+      assertTrue(bytes <= flags * HISTORY_BYTES_PER_FLAG,
+            () -> String.format("%,d bytes of history over %,d flags", bytes, flags));
+   }
+
+   /**
+    * Flags and unflags every mine, then opens every safe cell that's still
+    * hidden, with a listener on the field like the UI's.
+    *
+    * @return how many moves were made.
+    */
+   private static int play(MineField mf, boolean withListener) {
+      final Counter counter = new Counter();
+      if (withListener) mf.addListener(counter);
+      int moves = 0;
+      for (int c = 0; c < mf.cellCount(); ++c) {
+         if (!mf.hasBomb(c)) continue;
+         mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+         mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+         moves += 2;
+      }
+      for (int c = 0; c < mf.cellCount() && !mf.isOver(); ++c) {
+         if (mf.hasBomb(c) || mf.isRevealed(c)) continue;
+         mf.open(mf.xOf(c), mf.yOf(c));
+         ++moves;
+      }
+      assertTrue(mf.getState() == MineField.State.WON);
+      return moves;
+   }
+
+   // something for the field to call, so the listener path is measured too
+   private static final class Counter implements GameListener {
+      int events;
+
+      @Override
+      public void cellsRevealed(MineField mf, RevealResult revealed) { events += revealed.size(); }
+
+      @Override
+      public void cellFlagged(MineField mf, int x, int y, boolean flagged) { ++events; }
+
+      @Override
+      public void gameWon(MineField mf) { ++events; }
+   }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saved games: what goes out comes back the same, and a file that's been
+ * cut short or scribbled on is turned away with an IOException rather
+ * than loaded as some other board.
+ *
+ * @author richa
+ */
+class SavedGameTest {
+
+   @TempDir
+   Path dir;
+
+   @Test
+   void aGameComesBackTheSame() throws IOException {
+      // 130 wide, so the bitsets don't end on a word boundary
+      final MineField mf = new MineField(130, 33, 0.15, 60, 16, 42L);
+      final MoveLog log = new MoveLog();
+      mf.open(60, 16);
+      log.add(0, mf.index(60, 16), false);
+      for (int c = 0, flags = 0; c < mf.cellCount() && flags < 10; ++c) {
+         if (mf.hasBomb(c)) {
+            mf.toggleFlag(mf.xOf(c), mf.yOf(c));
+            log.add(100 + flags, c, true);
+            ++flags;
+         }
+      }
+
+      final Path file = dir.resolve("game.mines");
+      SavedGame.write(file, mf, log);
+      final SavedGame back = SavedGame.read(file);
+
+      final MineField bf = back.field();
+      assertEquals(mf.width(), bf.width());
+      assertEquals(mf.height(), bf.height());
+      assertEquals(mf.howManyMines(), bf.howManyMines());
+      assertEquals(mf.seed(), bf.seed());
+      assertEquals(mf.minesPlaced(), bf.minesPlaced());
+      assertArrayEquals(mf.mineBits(), bf.mineBits());
+      assertArrayEquals(mf.revealedBits(), bf.revealedBits());
+      assertArrayEquals(mf.flaggedBits(), bf.flaggedBits());
+      assertEquals(mf.safeCellsRemaining(), bf.safeCellsRemaining());
+      assertEquals(mf.flagsPlaced(), bf.flagsPlaced());
+      assertEquals(mf.getState(), bf.getState());
+
+      final MoveLog bl = back.moves();
+      assertEquals(log.size(), bl.size());
+      for (int i = 0; i < log.size(); ++i) {
+         assertEquals(log.time(i), bl.time(i), "move " + i);
+         assertEquals(log.cell(i), bl.cell(i), "move " + i);
+         assertEquals(log.isFlag(i), bl.isFlag(i), "move " + i);
+      }
+   }
+
+   @Test
+   void anUnstartedGameWithNoMovesComesBack() throws IOException {
+      final MineField mf = new MineField(9, 9, 0.2, 3L, true);
+      final Path file = dir.resolve("empty.mines");
+      SavedGame.write(file, mf, new MoveLog());
+      final SavedGame back = SavedGame.read(file);
+      assertEquals(0, back.moves().size());
+      assertEquals(false, back.field().minesPlaced());
+
+      // and its log can still be added to
+      back.moves().add(5, 40, false);
+      assertEquals(1, back.moves().size());
+   }
+
+   @Test
+   void aTruncatedFileIsRefused() throws IOException {
+      final Path file = saved();
+      final byte[] all = Files.readAllBytes(file);
+      for (int len : new int[] {0, 7, 39, 40, all.length - 8, all.length - 1}) {
+         Files.write(file, Arrays.copyOf(all, len));
+         assertThrows(IOException.class, () -> SavedGame.read(file), len + " bytes");
+      }
+   }
+
+   @Test
+   void aFileWithExtraBytesIsRefused() throws IOException {
+      final Path file = saved();
+      final byte[] all = Files.readAllBytes(file);
+      Files.write(file, Arrays.copyOf(all, all.length + 8));
+      assertThrows(IOException.class, () -> SavedGame.read(file));
+   }
+
+   @Test
+   void aCorruptHeaderIsRefused() throws IOException {
+      final Path file = saved();
+      final byte[] good = Files.readAllBytes(file);
+
+      assertRefused(file, good, b -> b.put(0, (byte) 'X'));            // magic
+      assertRefused(file, good, b -> b.putShort(8, (short) 99));       // version
+      assertRefused(file, good, b -> b.putInt(12, -5));                // width
+      assertRefused(file, good, b -> b.putInt(16, 0));                 // height
+      assertRefused(file, good, b -> b.putInt(32, -1));                // moves
+      assertRefused(file, good, b -> b.putInt(12, 21));                // size no longer fits
+   }
+
+   @Test
+   void aFlagOnARevealedCellIsRefused() throws IOException {
+      final MineField mf = new MineField(20, 20, 0.1, 10, 10, 8L);
+      mf.open(10, 10);
+      final Path file = dir.resolve("bad.mines");
+      SavedGame.write(file, mf, new MoveLog());
+
+      // flag the clicked cell, which the file also says is revealed
+      final byte[] bytes = Files.readAllBytes(file);
+      final int words = (20 * 20 + 63) >>> 6;
+      final int cell = mf.index(10, 10);
+      final int at = 40 + 2 * words * 8 + (cell >>> 6) * 8 + ((cell & 63) >>> 3);
+      bytes[at] |= (byte) (1 << (cell & 7));
+      Files.write(file, bytes);
+      assertThrows(IOException.class, () -> SavedGame.read(file));
+   }
+
+   private Path saved() throws IOException {
+      final MineField mf = new MineField(40, 30, 0.15, 20, 15, 2L);
+      mf.open(20, 15);
+      final MoveLog log = new MoveLog();
+      log.add(0, mf.index(20, 15), false);
+      final Path file = dir.resolve("saved.mines");
+      SavedGame.write(file, mf, log);
+      return file;
+   }
+
+   private interface Scribble {
+      void on(ByteBuffer b);
+   }
+
+   private static void assertRefused(Path file, byte[] good, Scribble scribble) throws IOException {
+      final byte[] bytes = good.clone();
+      scribble.on(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+      Files.write(file, bytes);
+      assertThrows(IOException.class, () -> SavedGame.read(file));
+   }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright Richard Todd. I put the code under the
+ * MIT License
+ */
+package rwt.minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The Solver on small boards drawn by hand, where the safe cells and the
+ * mines are known, and on random boards, where whatever it calls certain
+ * has to be right.
+ *
+ * Boards are drawn a row per string: '*' is a hidden mine, '.' a hidden
+ * safe cell, and 'o' a revealed one (its count comes from the mines).
+ *
+ * @author richa
+ */
+class SolverTest {
+
+    private final Solver solver = new Solver();
+
+    @Test
+    void oneTwoOne() {
+        final BoardSnapshot b = board(
+                "*.*",
+                "ooo");
+        final Hints h = solver.solve(b, () -> false);
+        assertArrayEquals(new int[] {1}, h.safeCells());
+        assertArrayEquals(new int[] {0, 2}, h.mineCells());
+        assertTrue(h.isExact());
+    }
+
+    @Test
+    void aSatisfiedNumberClearsItsNeighbors() {
+        final BoardSnapshot b = board(
+                "*o.",
+                "oo.");
+        // the corner's 1 can only be the mine at 0, which satisfies the rest
+        final Hints h = solver.solve(b, () -> false);
+        assertArrayEquals(new int[] {0}, h.mineCells());
+        assertArrayEquals(new int[] {2, 5}, h.safeCells());
+    }
+
+    @Test
+    void theSubsetRule() {
+        final BoardSnapshot b = board(
+                ".*.",
+                "ooo",
+                "ooo");
+        final Hints h = solver.deduce(b);
+        assertArrayEquals(new int[] {0, 2}, h.safeCells());
+        assertArrayEquals(new int[] {1}, h.mineCells());
+    }
+
+    @Test
+    void aFiftyFiftyIsLeftAlone() {
+        final BoardSnapshot b = board(
+                "*.",
+                "oo",
+                "oo");
+        final Hints h = solver.solve(b, () -> false);
+        assertEquals(0, h.safeCells().length);
+        assertEquals(0, h.mineCells().length);
+        assertEquals(0.5f, h.probability(0), 1e-3f);
+        assertEquals(0.5f, h.probability(1), 1e-3f);
+        assertEquals(-1f, h.probability(2));
+    }
+
+    @Test
+    void whatItCallsCertainIsRight() {
+        for (long seed = 0; seed < 40; ++seed) {
+            final MineField mf = new MineField(24, 16, 0.16, 12, 8, seed);
+            mf.open(12, 8);
+            final BoardSnapshot b = mf.snapshot();
+            final Hints solved = solver.solve(b, () -> false);
+            for (int c : solved.safeCells()) assertFalse(mf.hasBomb(c), "seed " + seed + " cell " + c);
+            for (int c : solved.mineCells()) assertTrue(mf.hasBomb(c), "seed " + seed + " cell " + c);
+
+            // deduce() skips the sampling, not the certainty
+            final Hints sure = solver.deduce(b);
+            if (solved.isExact()) {
+                assertArrayEquals(solved.safeCells(), sure.safeCells(), "seed " + seed);
+                assertArrayEquals(solved.mineCells(), sure.mineCells(), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void aBigComponentOnASparseBoardStillHasOdds() {
+        // A line of 1s over a hidden row, with a hidden cell at each end of
+        // the line.  Five layouts fit: a mine every third cell at any of
+        // three shifts, or a mine in either end cell with the shift it
+        // forces.  Each has a thousand mines, so they're all as likely.  The
+        // hidden rows below make the board sparse, so a layout's weight on
+        // its own is far below the smallest double.
+        final int w = 3000;
+        final StringBuilder[] rows = new StringBuilder[6];
+        for (int y = 0; y < rows.length; ++y) rows[y] = new StringBuilder(w);
+        for (int x = 0; x < w; ++x) {
+            rows[0].append(x % 3 == 1 ? '*' : '.');
+            rows[1].append(x == 0 || x == w - 1 ? '.' : 'o');
+            rows[2].append('o');
+            rows[3].append('.');
+            rows[4].append('.');
+            rows[5].append('.');
+        }
+        final BoardSnapshot b = board(Arrays.stream(rows).map(StringBuilder::toString).toArray(String[]::new));
+        final Hints h = solver.solve(b, () -> false);
+        assertTrue(h.isExact());
+        for (int x = 0; x < w; ++x) {
+            final float odds = (x % 3 == 1 || x == 0 || x == w - 1) ? 0.2f : 0.4f;
+            assertEquals(odds, h.probability(x), 1e-3f, "cell " + x);
+        }
+        assertEquals(0.2f, h.probability(w), 1e-3f);
+        assertEquals(0.2f, h.probability(2 * w - 1), 1e-3f);
+    }
+
+    private static BoardSnapshot board(String... rows) {
+        final int h = rows.length, w = rows[0].length();
+        final long[] mines = new long[(w * h + 63) >>> 6];
+        final long[] revealed = new long[mines.length];
+        int n = 0;
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                switch (rows[y].charAt(x)) {
+                    case '*' -> { MineField.setBit(mines, y * w + x); ++n; }
+                    case 'o' -> MineField.setBit(revealed, y * w + x);
+                    default -> { }
+                }
+            }
+        }
+        return new BoardSnapshot(w, h, n, revealed, MineField.neighborCounts(mines, w, h));
+    }
+}